@@ -23,16 +23,26 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.alfresco.bm.event.AbstractEventProcessor;
 import org.alfresco.bm.event.Event;
 import org.alfresco.bm.event.EventResult;
 import org.alfresco.bm.file.TestFileService;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
 import org.apache.chemistry.opencmis.commons.impl.jaxb.CmisException;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBObject;
 
@@ -44,16 +54,169 @@ import com.mongodb.DBObject;
  */
 public abstract class AbstractCMISEventProcessor extends AbstractEventProcessor
 {
+    /** The name recorded in results when no {@link OperationContextProfile profile} is used */
+    public static final String CTX_PROFILE_DEFAULT = "default";
+    /** Results with this field set to <tt>true</tt> are attempts to be retried, not events of the test */
+    public static final String FIELD_RETRY = "retry";
+    /** The event name of the scenario that a session goes on to after a failed scenario */
+    public static final String FIELD_NEXT_SCENARIO = "nextScenario";
+
+    private OperationContextProfile operationContextProfile;
+    private ResultCompactor resultCompactor;
+    private ScenarioLatencyRecorder scenarioLatencyRecorder;
+    private SessionLifecycle sessionLifecycle;
+    /** A copy of the event timer of the event being processed by the thread */
+    private static final ThreadLocal<EventTimer> EVENT_TIMER = new ThreadLocal<EventTimer>();
+
+    /**
+     * Use a named operation context for the CMIS calls made by this processor instead of the session default
+     * 
+     * @since 1.4
+     */
+    public void setOperationContextProfile(OperationContextProfile operationContextProfile)
+    {
+        this.operationContextProfile = operationContextProfile;
+    }
+
+    /**
+     * Reduce the size of the stored results
+     * 
+     * @since 1.4
+     */
+    public void setResultCompactor(ResultCompactor resultCompactor)
+    {
+        this.resultCompactor = resultCompactor;
+    }
+
+    /**
+     * Record the end-to-end latencies of scenarios, including those that fail
+     * 
+     * @since 1.4
+     */
+    public void setScenarioLatencyRecorder(ScenarioLatencyRecorder scenarioLatencyRecorder)
+    {
+        this.scenarioLatencyRecorder = scenarioLatencyRecorder;
+    }
+
+    /**
+     * @return the scenario latency recorder or <tt>null</tt> if latencies are not recorded
+     * 
+     * @since 1.4
+     */
+    protected ScenarioLatencyRecorder getScenarioLatencyRecorder()
+    {
+        return scenarioLatencyRecorder;
+    }
+
+    /**
+     * Keep sessions running more scenarios according to the given lifecycle, including after a scenario fails
+     * 
+     * @since 1.4
+     */
+    public void setSessionLifecycle(SessionLifecycle sessionLifecycle)
+    {
+        this.sessionLifecycle = sessionLifecycle;
+    }
+
+    /**
+     * @return the session lifecycle or <tt>null</tt> if sessions run a single scenario
+     * 
+     * @since 1.4
+     */
+    protected SessionLifecycle getSessionLifecycle()
+    {
+        return sessionLifecycle;
+    }
+
+    /**
+     * @return the operation context profile or <tt>null</tt> if the session default is used
+     * 
+     * @since 1.4
+     */
+    protected OperationContextProfile getOperationContextProfile()
+    {
+        return operationContextProfile;
+    }
+
+    /**
+     * @return the operation context of the {@link #setOperationContextProfile(OperationContextProfile) profile}
+     *         or the session default if there is no profile; the property filter of a session's
+     *         {@link StartCMISSession#setFilterExperiment(String) filter experiment} applies to both
+     * 
+     * @since 1.4
+     */
+    protected OperationContext getOperationContext(Session session)
+    {
+        return operationContextProfile == null ? session.getDefaultContext() : operationContextProfile.getOperationContext(session);
+    }
+
     /**
      * {@inheritDoc}
      */
     protected abstract EventResult processCMISEvent(Event event) throws Exception;
     
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The time is also measured for the {@link LiveMetrics live metrics}.
+     */
+    @Override
+    protected void suspendTimer()
+    {
+        super.suspendTimer();
+        EventTimer timer = EVENT_TIMER.get();
+        if (timer != null)
+        {
+            timer.suspend();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void resumeTimer()
+    {
+        super.resumeTimer();
+        EventTimer timer = EVENT_TIMER.get();
+        if (timer != null)
+        {
+            timer.resume();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void stopTimer()
+    {
+        super.stopTimer();
+        EventTimer timer = EVENT_TIMER.get();
+        if (timer != null)
+        {
+            timer.stop();
+        }
+    }
+
     public final EventResult processEvent(Event event) throws Exception
     {
+        EventResult result = null;
+        // The event timer starts when processing starts
+        EventTimer timer = new EventTimer();
+        EVENT_TIMER.set(timer);
+        CMISHttpStats.reset();
+        // Snapshot the session cache so that this event's share can be reported
+        InstrumentedCache.CacheStats cacheStats = null;
+        long[] cacheSnapshot = null;
+        if (event.getData() instanceof CMISEventData)
+        {
+            cacheStats = InstrumentedCache.getStats(((CMISEventData) event.getData()).getSession());
+            cacheSnapshot = cacheStats == null ? null : cacheStats.snapshot();
+        }
         try
         {
-            return processCMISEvent(event);
+            result = processCMISEvent(event);
         }
         catch (CmisRuntimeException e)
         {
@@ -71,7 +234,7 @@ public abstract class AbstractCMISEventProcessor extends AbstractEventProcessor
                     .get();
             
             // Build failure result
-            return new EventResult(data, false);
+            result = new EventResult(data, false);
         }
         catch(Exception genEx)
         {
@@ -79,8 +242,114 @@ public abstract class AbstractCMISEventProcessor extends AbstractEventProcessor
             {
                 logger.debug("General exception in CMIS benchmark.", genEx);
             }
-            throw genEx;
+            Event nextScenario = failScenario(event);
+            if (nextScenario == null)
+            {
+                LiveMetrics.get().record(event.getName(), timer.getTime(), false);
+                EVENT_TIMER.remove();
+                throw genEx;
+            }
+            // Report the failure but keep the session going
+            DBObject data = BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "" + genEx.getMessage())
+                    .append("stack", ExceptionUtils.getStackTrace(genEx))
+                    .append(FIELD_NEXT_SCENARIO, nextScenario.getName())
+                    .get();
+            result = new EventResult(data, Collections.singletonList(nextScenario), false);
         }
+        // Record the profile unless the processor has already done so
+        if (result.getData() instanceof DBObject)
+        {
+            DBObject resultData = (DBObject) result.getData();
+            if (!resultData.containsField("ctxProfile"))
+            {
+                resultData.put("ctxProfile", operationContextProfile == null ? CTX_PROFILE_DEFAULT : operationContextProfile.getName());
+            }
+            // Tag the result so that session variants can be compared side by side
+            if (event.getData() instanceof CMISEventData)
+            {
+                CMISEventData cmisData = (CMISEventData) event.getData();
+                if (!cmisData.getSessionTags().isEmpty())
+                {
+                    resultData.put("sessionTags", new BasicDBObject(cmisData.getSessionTags()));
+                }
+            }
+            CMISHttpStats httpStats = CMISHttpStats.get();
+            if (httpStats.getRequests() > 0)
+            {
+                resultData.put("http", httpStats.toDBObject());
+            }
+            if (cacheStats != null)
+            {
+                resultData.put("cache", cacheStats.toDBObject(cacheSnapshot));
+            }
+        }
+        if (!isRetry(result))
+        {
+            LiveMetrics.get().record(event.getName(), timer.getTime(), result.isSuccess());
+        }
+        EVENT_TIMER.remove();
+        // A scenario that fails or goes no further must not keep its slot
+        if (!result.isSuccess())
+        {
+            Event nextScenario = failScenario(event);
+            if (nextScenario != null)
+            {
+                // The session goes on to its next scenario, as it would have done had the scenario completed
+                List<Event> nextEvents = new ArrayList<Event>(result.getNextEvents());
+                nextEvents.add(nextScenario);
+                if (result.getData() instanceof DBObject)
+                {
+                    ((DBObject) result.getData()).put(FIELD_NEXT_SCENARIO, nextScenario.getName());
+                }
+                result = new EventResult(result.getData(), nextEvents, false);
+            }
+        }
+        else if (result.getNextEvents().isEmpty() && event.getData() instanceof CMISEventData)
+        {
+            ((CMISEventData) event.getData()).releaseScenarioPermit();
+        }
+        if (resultCompactor != null && result.getData() instanceof DBObject)
+        {
+            resultCompactor.compact((DBObject) result.getData(), result.isSuccess());
+        }
+        return result;
+    }
+
+    /**
+     * Release any {@link ScenarioLimiter.Permit scenario permit} held by the event's data and record the
+     * latency of the failed scenario, so that the worst outcomes are not left out of the percentiles
+     * 
+     * @return                          the first event of the session's next scenario or <tt>null</tt> if the
+     *                                  event was not part of a scenario or the session has no more scenarios to run
+     */
+    private Event failScenario(Event event)
+    {
+        Object data = event.getData();
+        if (!(data instanceof CMISEventData))
+        {
+            return null;
+        }
+        CMISEventData cmisData = (CMISEventData) data;
+        ScenarioLimiter.Permit permit = cmisData.getScenarioPermit();
+        // Only the first release counts
+        if (!cmisData.releaseScenarioPermit())
+        {
+            return null;
+        }
+        if (scenarioLatencyRecorder != null && cmisData.getScenarioScheduledTime() > 0L)
+        {
+            long scenarioLatency = System.currentTimeMillis() - cmisData.getScenarioScheduledTime();
+            scenarioLatencyRecorder.record(permit.getScenario(), scenarioLatency, false);
+        }
+        Event nextScenario = sessionLifecycle == null ? null : sessionLifecycle.nextScenario(cmisData, permit.getScenario());
+        if (nextScenario == null)
+        {
+            // The session is finished with its workers
+            cmisData.getWorkers().shutdown();
+        }
+        return nextScenario;
     }
     
     /** Some default search strings when no file is found with them */
@@ -141,16 +410,124 @@ public abstract class AbstractCMISEventProcessor extends AbstractEventProcessor
         }
     }
     
-    private static final Random RANDOM = new Random();
+    /**
+     * @return                          <tt>true</tt> if the result is only an attempt to be retried
+     * 
+     * @since 1.4
+     */
+    public static boolean isRetry(EventResult result)
+    {
+        return result.getData() instanceof DBObject && Boolean.TRUE.equals(((DBObject) result.getData()).get(FIELD_RETRY));
+    }
+
     /**
      * Choose a random string from the search strings provided
+     * 
+     * @param random                    the session's {@link CMISEventData#getRandom() source of random choices}
      */
-    public static String getRandomSearchString(String[] searchStrings)
+    public static String getRandomSearchString(String[] searchStrings, Random random)
     {
         if (searchStrings == null || searchStrings.length == 0)
         {
             throw new IllegalArgumentException("No search strings to choose from.");
         }
-        return searchStrings[RANDOM.nextInt(searchStrings.length)];
+        return searchStrings[random.nextInt(searchStrings.length)];
+    }
+
+    /** Keeps the names of a seeded run distinct from those of earlier runs with the same seed */
+    private static final long NAME_SALT = System.currentTimeMillis();
+
+    /**
+     * Generate a unique name from the session's source of random choices
+     * 
+     * @param random                    the session's {@link CMISEventData#getRandom() source of random choices}
+     * @return                          a name in the form of a UUID
+     * 
+     * @since 1.4
+     */
+    public static String getRandomName(Random random)
+    {
+        return new UUID(random.nextLong() ^ NAME_SALT, random.nextLong()).toString();
+    }
+
+    /**
+     * Run tasks on the given executor and wait for all of them to finish.  The first task failure is
+     * rethrown as it was thrown by the task so that CMIS faults are reported in the usual way.
+     * <p/>
+     * The tasks run in no particular order, so they must not use the session's
+     * {@link CMISEventData#getRandom() source of random choices}.
+     * 
+     * @param executor                  the pool of workers to run the tasks
+     * @param tasks                     the tasks to run
+     * @return                          the results of the tasks, in the order of the tasks
+     */
+    protected static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws Exception
+    {
+        // Count the HTTP requests of the tasks with those of the event
+        List<Callable<T>> sharedTasks = new ArrayList<Callable<T>>(tasks.size());
+        for (Callable<T> task : tasks)
+        {
+            sharedTasks.add(CMISHttpStats.share(task));
+        }
+        List<Future<T>> futures = executor.invokeAll(sharedTasks);
+        List<T> results = new ArrayList<T>(futures.size());
+        for (Future<T> future : futures)
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Follows the suspensions and resumptions of an event's timer to give the time it will report
+     */
+    private static class EventTimer
+    {
+        private long time = 0L;
+        private long runningSince = System.currentTimeMillis();
+        private boolean stopped = false;
+
+        private void suspend()
+        {
+            if (runningSince > 0L)
+            {
+                time += System.currentTimeMillis() - runningSince;
+                runningSince = 0L;
+            }
+        }
+
+        private void resume()
+        {
+            if (runningSince == 0L && !stopped)
+            {
+                runningSince = System.currentTimeMillis();
+            }
+        }
+
+        private void stop()
+        {
+            suspend();
+            stopped = true;
+        }
+
+        /**
+         * @return                  the time (ms) that the timer has been running
+         */
+        private long getTime()
+        {
+            return runningSince > 0L ? time + System.currentTimeMillis() - runningSince : time;
+        }
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Admit a scenario only if it is running below its concurrency cap
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing the {@link CMISEventData#getSession() CMIS session}.
+ *
+ * <h1>Actions</h1>
+ *
+ * Try to get a permit from the scenario's {@link ScenarioLimiter}.  If the scenario is at capacity, the
+ * same event is rescheduled after a short delay, which pushes back on the rate at which the scenario is
+ * started without holding up a thread.  The time from the scenario first being scheduled to it being
+ * admitted is reported as the <b>queueWait</b>.  Rejected attempts are marked as <b>retry</b> results
+ * so that they are not counted as scenario events, and are best rescheduled under their own
+ * {@link #setEventNameRetry(String) event name}.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_PERMIT_ACQUIRED}: The {@link CMISEventData data object} holding the permit<br/>
+ * or the {@link #setEventNameRetry(String) retry event}, rescheduled, if no permit was available<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class AcquireScenarioPermit extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_PERMIT_ACQUIRED = "cmis.scenarioPermitAcquired";
+    public static final long DEFAULT_RETRY_DELAY = 200L;
+
+    private final ScenarioLimiter limiter;
+    private String eventNamePermitAcquired;
+    private long retryDelay;
+    private String eventNameRetry;
+
+    /**
+     * @param limiter               the concurrency cap for the scenario
+     */
+    public AcquireScenarioPermit(ScenarioLimiter limiter)
+    {
+        super();
+        this.limiter = limiter;
+        this.eventNamePermitAcquired = EVENT_NAME_PERMIT_ACQUIRED;
+        this.retryDelay = DEFAULT_RETRY_DELAY;
+        this.eventNameRetry = null;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_PERMIT_ACQUIRED default} event name for 'permit acquired'.
+     */
+    public void setEventNamePermitAcquired(String eventNamePermitAcquired)
+    {
+        this.eventNamePermitAcquired = eventNamePermitAcquired;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_RETRY_DELAY default} time (ms) to wait before trying again when the
+     * scenario is at capacity.
+     */
+    public void setRetryDelay(long retryDelay)
+    {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Override the default of retrying with the inbound event name.  A separate event name keeps the
+     * retries apart from the first attempts in the results and charts.
+     */
+    public void setEventNameRetry(String eventNameRetry)
+    {
+        this.eventNameRetry = eventNameRetry;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to start scenario; no session provided.", false);
+        }
+        // Remember when the scenario was first meant to start
+        if (data.getScenarioScheduledTime() <= 0L)
+        {
+            data.setScenarioScheduledTime(event.getScheduledTime());
+        }
+
+        ScenarioLimiter.Permit permit = limiter.tryAcquire();
+        super.stopTimer();                                  // Timer control
+
+        long now = System.currentTimeMillis();
+        long queueWait = now - data.getScenarioScheduledTime();
+        if (permit == null)
+        {
+            // Back off and try again later
+            String retryEventName = eventNameRetry == null ? event.getName() : eventNameRetry;
+            Event retryEvent = new Event(retryEventName, now + retryDelay, data);
+            return new EventResult(
+                    BasicDBObjectBuilder
+                        .start()
+                        .append("msg", "Scenario at capacity; rescheduled.")
+                        .append("scenario", limiter.getScenario())
+                        .append("admitted", Boolean.FALSE)
+                        .append(FIELD_RETRY, Boolean.TRUE)
+                        .append("queueWait", queueWait)
+                        .append("inFlight", limiter.getInFlight())
+                        .append("maxInFlight", limiter.getMaxInFlight())
+                        .get(),
+                    retryEvent);
+        }
+        limiter.recordQueueWait(queueWait);
+        data.setScenarioPermit(permit);
+
+        // Done
+        Event doneEvent = new Event(eventNamePermitAcquired, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully acquired scenario permit.")
+                    .append("scenario", limiter.getScenario())
+                    .append("admitted", Boolean.TRUE)
+                    .append("queueWait", queueWait)
+                    .append("inFlight", limiter.getInFlight())
+                    .append("maxInFlight", limiter.getMaxInFlight())
+                    .push("totals")
+                        .append("admitted", limiter.getAdmittedCount())
+                        .append("rejected", limiter.getRejectedCount())
+                        .append("avgQueueWait", limiter.getAverageQueueWait())
+                        .append("maxQueueWait", limiter.getMaxQueueWait())
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.Ace;
+import org.apache.chemistry.opencmis.commons.data.Acl;
+import org.apache.chemistry.opencmis.commons.enums.AclPropagation;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Add or remove an access control entry on a folder
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing an existing folder, usually the root of a folder tree.
+ *
+ * <h1>Actions</h1>
+ *
+ * Add or remove an ACE granting a permission to a principal, either propagating the change
+ * to the folder's descendants or applying it to the folder only
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_ACL_APPLIED}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ApplyFolderAcl extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_ACL_APPLIED = "cmis.aclApplied";
+
+    private final String principalId;
+    private final String permission;
+    private final boolean remove;
+    private boolean propagate;
+    private String eventNameAclApplied;
+
+    /**
+     * @param principalId           the principal (user or group) the ACE applies to
+     * @param permission            the permission to grant or revoke e.g. <tt>cmis:read</tt>
+     * @param remove                <tt>true</tt> to remove the ACE or <tt>false</tt> to add it
+     */
+    public ApplyFolderAcl(String principalId, String permission, boolean remove)
+    {
+        super();
+        this.principalId = principalId;
+        this.permission = permission;
+        this.remove = remove;
+        this.propagate = true;
+        this.eventNameAclApplied = EVENT_NAME_ACL_APPLIED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_ACL_APPLIED default} event name for 'ACL applied'.
+     */
+    public void setEventNameAclApplied(String eventNameAclApplied)
+    {
+        this.eventNameAclApplied = eventNameAclApplied;
+    }
+
+    /**
+     * @param propagate             <tt>true</tt> (default) to propagate the change to the folder's descendants
+     *                              or <tt>false</tt> to apply it to the folder only
+     */
+    public void setPropagate(boolean propagate)
+    {
+        this.propagate = propagate;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to apply ACL; no session provided.", false);
+        }
+        if (data.getBreadcrumb().isEmpty())
+        {
+            return new EventResult("Unable to apply ACL; no folder provided.", false);
+        }
+        Folder folder = data.getBreadcrumb().getLast();
+        Session session = data.getSession();
+
+        List<Ace> aces = Collections.singletonList(
+                session.getObjectFactory().createAce(principalId, Collections.singletonList(permission)));
+        List<Ace> addAces = remove ? null : aces;
+        List<Ace> removeAces = remove ? aces : null;
+        AclPropagation aclPropagation = propagate ? AclPropagation.PROPAGATE : AclPropagation.OBJECTONLY;
+
+        super.resumeTimer();                                // Timer control
+        Acl acl = session.applyAcl(folder, addAces, removeAces, aclPropagation);
+        super.stopTimer();                                  // Timer control
+
+        // Done
+        Event doneEvent = new Event(eventNameAclApplied, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", remove ? "Successfully removed ACE." : "Successfully added ACE.")
+                    .push("folder")
+                        .append("id", folder.getId())
+                        .append("name", folder.getName())
+                        .append("descendants", data.getObjectIds().size())
+                    .pop()
+                    .push("ace")
+                        .append("principalId", principalId)
+                        .append("permission", permission)
+                        .append("remove", remove)
+                        .append("propagation", aclPropagation.value())
+                        .append("aclSize", (acl == null || acl.getAces() == null) ? 0 : acl.getAces().size())
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
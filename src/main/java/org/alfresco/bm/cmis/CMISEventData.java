@@ -19,8 +19,10 @@
 package org.alfresco.bm.cmis;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.chemistry.opencmis.client.api.Document;
 import org.apache.chemistry.opencmis.client.api.Folder;
@@ -43,12 +45,63 @@ public class CMISEventData
     /** @since 1.3 */
     private ArrayList<String> objectIdCollection;
 
+    /** @since 1.4 */
+    private ScenarioLimiter.Permit scenarioPermit;
+    /** @since 1.4 */
+    private long scenarioScheduledTime;
+    /** @since 1.4 */
+    private int versionCount;
+    /** @since 1.4 */
+    private String changeLogToken;
+    /** @since 1.4 */
+    private int changeLogPolls;
+    /** @since 1.4 */
+    private final LinkedHashMap<String, String> sessionTags;
+    /** @since 1.4 */
+    private int scenarioCount;
+    /** @since 1.4 */
+    private final Random random;
+    /** @since 1.4 */
+    private final SessionWorkers workers;
+
     public CMISEventData(Session session)
+    {
+        this(session, new Random());
+    }
+
+    /**
+     * @param session               the CMIS session
+     * @param random                the source of random choices for everything done in the session
+     * 
+     * @since 1.4
+     */
+    public CMISEventData(Session session, Random random)
+    {
+        this(session, random, new SessionWorkers());
+    }
+
+    /**
+     * @param session               the CMIS session
+     * @param random                the source of random choices for everything done in the session
+     * @param workers               the worker threads of the session
+     * 
+     * @since 1.4
+     */
+    public CMISEventData(Session session, Random random, SessionWorkers workers)
     {
         this.session = session;
+        this.random = random;
+        this.workers = workers;
         this.breadcrumb = new LinkedList<Folder>();
         this.document = null;
         this.objectIdCollection = new ArrayList<String>();
+        this.scenarioPermit = null;
+        this.scenarioScheduledTime = 0L;
+        this.versionCount = 0;
+        this.changeLogToken = null;
+        this.changeLogPolls = 0;
+        this.sessionTags = new LinkedHashMap<String, String>();
+        this.scenarioCount = 0;
     }
 
     @SuppressWarnings("unchecked")
@@ -58,6 +111,15 @@ public class CMISEventData
         this.breadcrumb = new LinkedList<Folder>(copyFrom.breadcrumb);
         this.document = copyFrom.document;
         this.objectIdCollection = (ArrayList<String>)copyFrom.objectIdCollection.clone();
+        this.scenarioPermit = copyFrom.scenarioPermit;
+        this.scenarioScheduledTime = copyFrom.scenarioScheduledTime;
+        this.versionCount = copyFrom.versionCount;
+        this.changeLogToken = copyFrom.changeLogToken;
+        this.changeLogPolls = copyFrom.changeLogPolls;
+        this.sessionTags = new LinkedHashMap<String, String>(copyFrom.sessionTags);
+        this.scenarioCount = copyFrom.scenarioCount;
+        this.random = copyFrom.random;
+        this.workers = copyFrom.workers;
     }
 
     public Session getSession()
@@ -65,6 +127,24 @@ public class CMISEventData
         return session;
     }
 
+    /**
+     * @return the source of random choices for the session, which is only used by one event at a time
+     *         and only on the event's own thread: anything that tasks run by the session's
+     *         {@link #getWorkers() workers} need must be drawn in task order before the tasks are submitted
+     */
+    public Random getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * @return the worker threads for parallel calls made with the session
+     */
+    public SessionWorkers getWorkers()
+    {
+        return workers;
+    }
+
     /**
      * @return the internally-stored bread-crumb that can be modified directly
      */
@@ -97,4 +177,125 @@ public class CMISEventData
     {
         return this.objectIdCollection;
     }
+
+    /**
+     * @return the permit allowing the current scenario to run (<tt>null</tt> if there is none)
+     */
+    public ScenarioLimiter.Permit getScenarioPermit()
+    {
+        return scenarioPermit;
+    }
+
+    /**
+     * @param scenarioPermit
+     *            the permit allowing the current scenario to run
+     */
+    public void setScenarioPermit(ScenarioLimiter.Permit scenarioPermit)
+    {
+        this.scenarioPermit = scenarioPermit;
+    }
+
+    /**
+     * Release the current scenario permit, if there is one.  It is safe to call this more than once.
+     * 
+     * @return <tt>true</tt> if a permit was released by this call
+     */
+    public boolean releaseScenarioPermit()
+    {
+        return scenarioPermit != null && scenarioPermit.release();
+    }
+
+    /**
+     * @return the time (ms since epoch) that the current scenario was first scheduled to start or <tt>0</tt>
+     */
+    public long getScenarioScheduledTime()
+    {
+        return scenarioScheduledTime;
+    }
+
+    /**
+     * @param scenarioScheduledTime
+     *            the time (ms since epoch) that the current scenario was first scheduled to start
+     */
+    public void setScenarioScheduledTime(long scenarioScheduledTime)
+    {
+        this.scenarioScheduledTime = scenarioScheduledTime;
+    }
+
+    /**
+     * @return the number of scenarios the session has completed
+     */
+    public int getScenarioCount()
+    {
+        return scenarioCount;
+    }
+
+    /**
+     * @param scenarioCount
+     *            the number of scenarios the session has completed
+     */
+    public void setScenarioCount(int scenarioCount)
+    {
+        this.scenarioCount = scenarioCount;
+    }
+
+    /**
+     * @return the number of versions of the current document known to have been created or <tt>0</tt> if unknown
+     */
+    public int getVersionCount()
+    {
+        return versionCount;
+    }
+
+    /**
+     * @param versionCount
+     *            the number of versions of the current document
+     */
+    public void setVersionCount(int versionCount)
+    {
+        this.versionCount = versionCount;
+    }
+
+    /**
+     * @return the change log token to read content changes from or <tt>null</tt> if none have been read yet
+     */
+    public String getChangeLogToken()
+    {
+        return changeLogToken;
+    }
+
+    /**
+     * @param changeLogToken
+     *            the change log token to read the next content changes from
+     */
+    public void setChangeLogToken(String changeLogToken)
+    {
+        this.changeLogToken = changeLogToken;
+    }
+
+    /**
+     * @return the number of times the change log has been polled in the current scenario
+     */
+    public int getChangeLogPolls()
+    {
+        return changeLogPolls;
+    }
+
+    /**
+     * @param changeLogPolls
+     *            the number of times the change log has been polled in the current scenario
+     */
+    public void setChangeLogPolls(int changeLogPolls)
+    {
+        this.changeLogPolls = changeLogPolls;
+    }
+
+    /**
+     * @return Direct access to the tags describing how the session was set up e.g. the property filter
+     *         used by an experiment.  The tags are recorded with every event result.
+     */
+    public LinkedHashMap<String, String> getSessionTags()
+    {
+        return sessionTags;
+    }
 }
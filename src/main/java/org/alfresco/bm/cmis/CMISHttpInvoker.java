@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.bindings.spi.BindingSession;
+import org.apache.chemistry.opencmis.client.bindings.spi.http.DefaultHttpInvoker;
+import org.apache.chemistry.opencmis.client.bindings.spi.http.Output;
+import org.apache.chemistry.opencmis.client.bindings.spi.http.Response;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.impl.UrlBuilder;
+
+/**
+ * The default OpenCMIS HTTP invoker, counting requests and response sizes in the
+ * {@link CMISHttpStats} of the calling thread.  Sessions use it through the
+ * {@link SessionParameter#HTTP_INVOKER_CLASS} parameter.
+ * <p/>
+ * Response bodies are counted as they are read, so the bytes of chunked responses are included.
+ * <p/>
+ * The response headers holding server timings and request IDs are given by the
+ * {@link #PARAM_TIMING_HEADERS} and {@link #PARAM_REQUEST_ID_HEADERS} session parameters.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CMISHttpInvoker extends DefaultHttpInvoker
+{
+    /** Session parameter: comma-separated names of response headers holding the server time */
+    public static final String PARAM_TIMING_HEADERS = "org.alfresco.bm.cmis.http.timingHeaders";
+    /** Session parameter: comma-separated names of response headers holding the server's request ID */
+    public static final String PARAM_REQUEST_ID_HEADERS = "org.alfresco.bm.cmis.http.requestIdHeaders";
+
+    private static final String[] NO_HEADERS = new String[0];
+
+    @Override
+    public Response invokeGET(UrlBuilder url, BindingSession session)
+    {
+        long start = System.currentTimeMillis();
+        return record(super.invokeGET(url, session), start, session);
+    }
+
+    @Override
+    public Response invokeGET(UrlBuilder url, BindingSession session, BigInteger offset, BigInteger length)
+    {
+        long start = System.currentTimeMillis();
+        return record(super.invokeGET(url, session, offset, length), start, session);
+    }
+
+    @Override
+    public Response invokePOST(UrlBuilder url, String contentType, Output writer, BindingSession session)
+    {
+        long start = System.currentTimeMillis();
+        return record(super.invokePOST(url, contentType, writer, session), start, session);
+    }
+
+    @Override
+    public Response invokePUT(UrlBuilder url, String contentType, Map<String, String> headers, Output writer, BindingSession session)
+    {
+        long start = System.currentTimeMillis();
+        return record(super.invokePUT(url, contentType, headers, writer, session), start, session);
+    }
+
+    @Override
+    public Response invokeDELETE(UrlBuilder url, BindingSession session)
+    {
+        long start = System.currentTimeMillis();
+        return record(super.invokeDELETE(url, session), start, session);
+    }
+
+    private static Response record(Response response, long start, BindingSession session)
+    {
+        long time = System.currentTimeMillis() - start;
+        CMISHttpStats stats = CMISHttpStats.get();
+        stats.record(
+                response, time,
+                getHeaderNames(session, PARAM_TIMING_HEADERS),
+                getHeaderNames(session, PARAM_REQUEST_ID_HEADERS));
+        return countBytes(response, stats);
+    }
+
+    /**
+     * @return                      the response with a body that counts the bytes read from it
+     */
+    private static Response countBytes(Response response, CMISHttpStats stats)
+    {
+        InputStream stream = response.getStream();
+        if (stream == null)
+        {
+            return response;
+        }
+        // The stream has already been decoded, so it must not be decoded again
+        Map<String, List<String>> headers = new HashMap<String, List<String>>(response.getHeaders());
+        for (Iterator<String> iterator = headers.keySet().iterator(); iterator.hasNext(); )
+        {
+            String name = iterator.next();
+            if ("Content-Encoding".equalsIgnoreCase(name) || "Content-Transfer-Encoding".equalsIgnoreCase(name))
+            {
+                iterator.remove();
+            }
+        }
+        return new Response(
+                response.getResponseCode(), response.getResponseMessage(), headers,
+                new CountingInputStream(stream, stats), null);
+    }
+
+    private static String[] getHeaderNames(BindingSession session, String param)
+    {
+        Object value = session.get(param);
+        if (value == null || value.toString().trim().isEmpty())
+        {
+            return NO_HEADERS;
+        }
+        return value.toString().trim().split("\\s*,\\s*");
+    }
+
+    /**
+     * Adds the bytes read to the statistics of the request
+     */
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private final CMISHttpStats stats;
+
+        private CountingInputStream(InputStream in, CMISHttpStats stats)
+        {
+            super(in);
+            this.stats = stats;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0)
+            {
+                stats.addBytes(1L);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int count = super.read(b, off, len);
+            if (count > 0)
+            {
+                stats.addBytes(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long count = super.skip(n);
+            stats.addBytes(count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.chemistry.opencmis.client.bindings.spi.http.Response;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * Counts of the HTTP requests made by the current thread, gathered by the {@link CMISHttpInvoker}
+ * and reset at the start of each event.  Tasks run on worker threads e.g. by parallel uploads are
+ * {@link #share(Callable) counted} with the event that started them.
+ * <p/>
+ * The response bytes are those read from the response bodies, after any decompression, so that
+ * chunked responses, which have no length, are counted too.
+ * <p/>
+ * Server timings and request IDs are taken from the configured response headers, if the server sends
+ * them, so that network time can be separated from server time and slow events found in the server logs.
+ * A timing header may use the <tt>Server-Timing</tt> syntax, in which case the <tt>dur</tt> values are
+ * added up, or give a plain number of milliseconds.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CMISHttpStats
+{
+    private static final ThreadLocal<CMISHttpStats> STATS = new ThreadLocal<CMISHttpStats>()
+    {
+        @Override
+        protected CMISHttpStats initialValue()
+        {
+            return new CMISHttpStats();
+        }
+    };
+
+    /**
+     * @return the statistics for the current thread
+     */
+    public static CMISHttpStats get()
+    {
+        return STATS.get();
+    }
+
+    /**
+     * Start counting again on the current thread
+     */
+    public static void reset()
+    {
+        STATS.get().clear();
+    }
+
+    /**
+     * Count the requests of a task in the statistics of the calling thread, wherever the task runs
+     * 
+     * @param task                  a task to be run on a worker thread
+     * @return                      the task, counting its requests with those of the current thread
+     */
+    public static <T> Callable<T> share(final Callable<T> task)
+    {
+        final CMISHttpStats stats = STATS.get();
+        return new Callable<T>()
+        {
+            @Override
+            public T call() throws Exception
+            {
+                CMISHttpStats workerStats = STATS.get();
+                STATS.set(stats);
+                try
+                {
+                    return task.call();
+                }
+                finally
+                {
+                    STATS.set(workerStats);
+                }
+            }
+        };
+    }
+
+    /** The most request IDs kept for one event */
+    public static final int MAX_REQUEST_IDS = 10;
+
+    private static final Pattern DURATION = Pattern.compile("dur=\"?([0-9]+(?:\\.[0-9]+)?)");
+    private static final Pattern NUMBER = Pattern.compile("^\\s*([0-9]+(?:\\.[0-9]+)?)");
+
+    private int requests;
+    private long bytes;
+    private long responseTime;
+    private int serverTimed;
+    private double serverTime;
+    private long serverTimedResponseTime;
+    private final BasicDBList requestIds;
+
+    private CMISHttpStats()
+    {
+        this.requestIds = new BasicDBList();
+        clear();
+    }
+
+    private synchronized void clear()
+    {
+        requests = 0;
+        bytes = 0L;
+        responseTime = 0L;
+        serverTimed = 0;
+        serverTime = 0.0;
+        serverTimedResponseTime = 0L;
+        requestIds.clear();
+    }
+
+    /**
+     * Record a response.  Its bytes are {@link #addBytes(long) added} as they are read.
+     * 
+     * @param response              the response
+     * @param time                  the time (ms) until the response headers were received
+     * @param timingHeaders         the names of headers that may hold the server time
+     * @param requestIdHeaders      the names of headers that may hold the server's ID of the request
+     */
+    public synchronized void record(Response response, long time, String[] timingHeaders, String[] requestIdHeaders)
+    {
+        requests++;
+        responseTime += time;
+        for (String timingHeader : timingHeaders)
+        {
+            String value = response.getHeader(timingHeader);
+            if (value != null)
+            {
+                double timing = parseTiming(value);
+                if (timing >= 0.0)
+                {
+                    serverTimed++;
+                    serverTime += timing;
+                    serverTimedResponseTime += time;
+                    break;
+                }
+            }
+        }
+        for (String requestIdHeader : requestIdHeaders)
+        {
+            String value = response.getHeader(requestIdHeader);
+            if (value != null)
+            {
+                if (requestIds.size() < MAX_REQUEST_IDS)
+                {
+                    requestIds.add(value);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Add bytes read from a response body
+     */
+    public synchronized void addBytes(long count)
+    {
+        bytes += count;
+    }
+
+    /**
+     * @return the time (ms) given by the header value or <tt>-1</tt> if there is none
+     */
+    static double parseTiming(String value)
+    {
+        double total = 0.0;
+        boolean found = false;
+        Matcher durations = DURATION.matcher(value);
+        while (durations.find())
+        {
+            total += Double.parseDouble(durations.group(1));
+            found = true;
+        }
+        if (!found)
+        {
+            Matcher number = NUMBER.matcher(value);
+            if (number.find())
+            {
+                total = Double.parseDouble(number.group(1));
+                found = true;
+            }
+        }
+        return found ? total : -1.0;
+    }
+
+    public synchronized int getRequests()
+    {
+        return requests;
+    }
+
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * @return the statistics for persistence with event results
+     */
+    public synchronized DBObject toDBObject()
+    {
+        DBObject dbObject = BasicDBObjectBuilder.start()
+                .append("requests", requests)
+                .append("bytes", bytes)
+                .append("responseTime", responseTime)
+                .get();
+        if (serverTimed > 0)
+        {
+            // Network and client time of the requests that the server timed
+            dbObject.put("serverTimed", serverTimed);
+            dbObject.put("serverTime", serverTime);
+            dbObject.put("networkTime", serverTimedResponseTime - serverTime);
+        }
+        if (!requestIds.isEmpty())
+        {
+            BasicDBList requestIdsCopy = new BasicDBList();
+            requestIdsCopy.addAll(requestIds);
+            dbObject.put("requestIds", requestIdsCopy);
+        }
+        return dbObject;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.Session;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Check in a private working copy
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing a private working copy (PWC).
+ *
+ * <h1>Actions</h1>
+ *
+ * Check in the PWC as a major or minor version and make the new version the current document.
+ * Until the document has the required number of versions, the next event starts another check out.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_DOCUMENT_CHECKED_IN}: The {@link CMISEventData data object} with the new version<br/>
+ * or the {@link #setEventNameCheckOut(String) check out event} if more versions are required<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CheckInDocument extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_DOCUMENT_CHECKED_IN = "cmis.documentCheckedIn";
+    public static final String EVENT_NAME_CHECK_OUT = "cmis.checkOut";
+
+    private final boolean major;
+    private final int versionCount;
+    private String eventNameDocumentCheckedIn;
+    private String eventNameCheckOut;
+
+    /**
+     * @param major                 <tt>true</tt> to check in major versions or <tt>false</tt> for minor versions
+     * @param versionCount          the number of versions each document must have before moving on
+     */
+    public CheckInDocument(boolean major, int versionCount)
+    {
+        super();
+        this.major = major;
+        this.versionCount = versionCount;
+        this.eventNameDocumentCheckedIn = EVENT_NAME_DOCUMENT_CHECKED_IN;
+        this.eventNameCheckOut = EVENT_NAME_CHECK_OUT;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_DOCUMENT_CHECKED_IN default} event name for 'document checked in'.
+     */
+    public void setEventNameDocumentCheckedIn(String eventNameDocumentCheckedIn)
+    {
+        this.eventNameDocumentCheckedIn = eventNameDocumentCheckedIn;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_CHECK_OUT default} event name used to create another version.
+     */
+    public void setEventNameCheckOut(String eventNameCheckOut)
+    {
+        this.eventNameCheckOut = eventNameCheckOut;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to check in document; no session provided.", false);
+        }
+        if (data.getDocument() == null)
+        {
+            return new EventResult("Unable to check in document; no working copy provided.", false);
+        }
+        Document pwc = data.getDocument();
+        Session session = data.getSession();
+        int versionsBefore = Math.max(1, data.getVersionCount());
+        Map<String, Object> properties = new HashMap<String, Object>();
+
+        super.resumeTimer();                                // Timer control
+        ObjectId newVersionId = pwc.checkIn(major, properties, null, "Benchmark check-in " + versionsBefore);
+        super.stopTimer();                                  // Timer control
+        // Fetch the new version outside of the timed check in
+        CmisObject newVersionObj = session.getObject(newVersionId, getOperationContext(session));
+        if (!(newVersionObj instanceof Document))
+        {
+            return new EventResult("Checked in document, but the new version is not a document: " + newVersionObj, false);
+        }
+        Document newVersion = (Document) newVersionObj;
+
+        int versionsAfter = versionsBefore + 1;
+        data.setDocument(newVersion);
+        data.setVersionCount(versionsAfter);
+
+        // Keep going until we have enough versions
+        String nextEventName = versionsAfter < versionCount ? eventNameCheckOut : eventNameDocumentCheckedIn;
+
+        // Done
+        Event doneEvent = new Event(nextEventName, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully checked in document.")
+                    .append("major", major)
+                    .append("versionCount", versionsAfter)
+                    .push("document")
+                        .append("id", newVersion.getId())
+                        .append("name", newVersion.getName())
+                        .append("versionLabel", newVersion.getVersionLabel())
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.Session;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Check out a document
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing an existing, versionable document.
+ *
+ * <h1>Actions</h1>
+ *
+ * Check out the document and make the private working copy (PWC) the current document
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_DOCUMENT_CHECKED_OUT}: The {@link CMISEventData data object} with the PWC<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CheckOutDocument extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_DOCUMENT_CHECKED_OUT = "cmis.documentCheckedOut";
+
+    private String eventNameDocumentCheckedOut;
+
+    /**
+     */
+    public CheckOutDocument()
+    {
+        super();
+        this.eventNameDocumentCheckedOut = EVENT_NAME_DOCUMENT_CHECKED_OUT;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_DOCUMENT_CHECKED_OUT default} event name for 'document checked out'.
+     */
+    public void setEventNameDocumentCheckedOut(String eventNameDocumentCheckedOut)
+    {
+        this.eventNameDocumentCheckedOut = eventNameDocumentCheckedOut;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to check out document; no session provided.", false);
+        }
+        if (data.getDocument() == null)
+        {
+            return new EventResult("Unable to check out document; no document provided.", false);
+        }
+        Document document = data.getDocument();
+        Session session = data.getSession();
+        int versionCount = Math.max(1, data.getVersionCount());
+
+        super.resumeTimer();                                // Timer control
+        ObjectId pwcId = document.checkOut();
+        super.stopTimer();                                  // Timer control
+        // Fetch the working copy outside of the timed check out
+        CmisObject pwcObj = session.getObject(pwcId, getOperationContext(session));
+        if (!(pwcObj instanceof Document))
+        {
+            return new EventResult("Checked out document, but the working copy is not a document: " + pwcObj, false);
+        }
+        Document pwc = (Document) pwcObj;
+
+        // The PWC is worked on from here
+        data.setDocument(pwc);
+        data.setVersionCount(versionCount);
+
+        // Done
+        Event doneEvent = new Event(eventNameDocumentCheckedOut, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully checked out document.")
+                    .append("versionCount", versionCount)
+                    .push("document")
+                        .append("id", document.getId())
+                        .append("name", document.getName())
+                        .append("versionLabel", document.getVersionLabel())
+                    .pop()
+                    .push("pwc")
+                        .append("id", pwc.getId())
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
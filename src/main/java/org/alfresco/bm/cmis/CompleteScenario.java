@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * Finish a scenario
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } that may hold a {@link ScenarioLimiter.Permit scenario permit}.
+ *
+ * <h1>Actions</h1>
+ *
+ * Release the scenario permit so that another instance of the scenario can be admitted.
+ * Record the end-to-end latency of the scenario, from the time its session or think time was scheduled to
+ * end, with the {@link #setScenarioLatencyRecorder(ScenarioLatencyRecorder) scenario latency recorder}.
+ * With a {@link SessionLifecycle session lifecycle}, the session goes on to its next scenario
+ * after a think time until it has run the required number of scenarios.
+ *
+ * <h1>Output</h1>
+ *
+ * None: the scenario terminates<br/>
+ * or the first event of the session's {@link SessionLifecycle#nextScenario(CMISEventData, String) next scenario}<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CompleteScenario extends AbstractCMISEventProcessor
+{
+    /**
+     */
+    public CompleteScenario()
+    {
+        super();
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.stopTimer();                                  // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to complete scenario; no session provided.", false);
+        }
+
+        long now = System.currentTimeMillis();
+        ScenarioLimiter.Permit permit = data.getScenarioPermit();
+        String scenario = null;
+        long heldTime = 0L;
+        if (permit != null)
+        {
+            scenario = permit.getScenario();
+            heldTime = now - permit.getAcquiredTime();
+            data.releaseScenarioPermit();
+        }
+        // The whole scenario, including the time its events spent queuing
+        long scenarioLatency = data.getScenarioScheduledTime() > 0L ? now - data.getScenarioScheduledTime() : -1L;
+        ScenarioLatencyRecorder scenarioLatencyRecorder = getScenarioLatencyRecorder();
+        ScenarioLatencyRecorder.ScenarioLatencies latencies = null;
+        if (scenarioLatencyRecorder != null && scenario != null && scenarioLatency >= 0L)
+        {
+            latencies = scenarioLatencyRecorder.record(scenario, scenarioLatency, true);
+        }
+
+        // Reuse the session for another scenario, if required
+        SessionLifecycle sessionLifecycle = getSessionLifecycle();
+        Event nextEvent = sessionLifecycle == null ? null : sessionLifecycle.nextScenario(data, scenario);
+        DBObject resultData = BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully completed scenario.")
+                    .append("scenario", scenario)
+                    .append("permitHeldTime", heldTime)
+                    .append("scenarioLatency", scenarioLatency)
+                    .append("sessionScenarios", data.getScenarioCount() + 1)
+                    .get();
+        if (latencies != null)
+        {
+            resultData.put("scenarioLatencies", latencies.getMeasured().toDBObject());
+            resultData.put("scenarioFailures", latencies.getFailures());
+            if (scenarioLatencyRecorder.isCorrected())
+            {
+                resultData.put("scenarioLatenciesCorrected", latencies.getCorrected().toDBObject());
+            }
+        }
+
+        if (nextEvent == null)
+        {
+            // The session is finished with its workers
+            data.getWorkers().shutdown();
+        }
+
+        // Done
+        EventResult result = nextEvent == null ?
+                new EventResult(resultData, true) :
+                new EventResult(resultData, nextEvent);
+
+        // Done
+        return result;
+    }
+}
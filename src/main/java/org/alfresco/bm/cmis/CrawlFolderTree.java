@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.Tree;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Crawl a folder tree
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing the root folder of the tree.
+ *
+ * <h1>Actions</h1>
+ *
+ * Visit every object in the tree using one of the {@link Mode crawl modes}: server-side with
+ * <tt>getDescendants</tt> or <tt>getFolderTree</tt>, or client-side with a level-barrier breadth-first
+ * crawl that lists the folders of each level in parallel on the session's {@link SessionWorkers workers}.
+ * A level is only started once every folder of the level above has been listed, so the client-side
+ * crawl reports, for each level, how long the listings spent waiting for the slowest folder of the level.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_FOLDER_TREE_CRAWLED}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CrawlFolderTree extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_FOLDER_TREE_CRAWLED = "cmis.folderTreeCrawled";
+
+    /**
+     * The ways of crawling a tree
+     */
+    public static enum Mode
+    {
+        /** A single <tt>getDescendants</tt> call returning folders and documents */
+        DESCENDANTS,
+        /** A single <tt>getFolderTree</tt> call returning folders only */
+        FOLDER_TREE,
+        /** Client-side level-barrier breadth-first crawl using <tt>getChildren</tt> */
+        PARALLEL
+    }
+
+    private final Mode mode;
+    private final int depth;
+    private final int threadCount;
+    private String eventNameFolderTreeCrawled;
+
+    /**
+     * @param mode                  the way to crawl the tree
+     * @param depth                 the number of levels to crawl or <tt>-1</tt> for all levels
+     * @param threadCount           the maximum number of folders listed at the same time by a
+     *                              {@link Mode#PARALLEL parallel} crawl
+     */
+    public CrawlFolderTree(Mode mode, int depth, int threadCount)
+    {
+        super();
+        if (depth == 0 || depth < -1)
+        {
+            throw new IllegalArgumentException("The crawl depth must be -1 or at least 1.");
+        }
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("The crawl thread count must be at least 1.");
+        }
+        this.mode = mode;
+        this.depth = depth;
+        this.threadCount = threadCount;
+        this.eventNameFolderTreeCrawled = EVENT_NAME_FOLDER_TREE_CRAWLED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_FOLDER_TREE_CRAWLED default} event name for 'folder tree crawled'.
+     */
+    public void setEventNameFolderTreeCrawled(String eventNameFolderTreeCrawled)
+    {
+        this.eventNameFolderTreeCrawled = eventNameFolderTreeCrawled;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to crawl folder tree; no session provided.", false);
+        }
+        if (data.getBreadcrumb().isEmpty())
+        {
+            return new EventResult("Unable to crawl folder tree; no folder provided.", false);
+        }
+        Folder folder = data.getBreadcrumb().getLast();
+        Session session = data.getSession();
+        OperationContext ctx = getOperationContext(session);
+
+        CrawlStats stats = new CrawlStats();
+        BasicDBList levels = new BasicDBList();
+        long start = System.currentTimeMillis();
+        switch (mode)
+        {
+            case DESCENDANTS:
+                super.resumeTimer();                        // Timer control
+                List<Tree<FileableCmisObject>> descendants = folder.getDescendants(depth, ctx);
+                super.stopTimer();                          // Timer control
+                stats.count(descendants, 1);
+                break;
+            case FOLDER_TREE:
+                super.resumeTimer();                        // Timer control
+                List<Tree<FileableCmisObject>> folderTree = folder.getFolderTree(depth, ctx);
+                super.stopTimer();                          // Timer control
+                stats.count(folderTree, 1);
+                break;
+            case PARALLEL:
+                ExecutorService executor = data.getWorkers().get(threadCount);
+                super.resumeTimer();                        // Timer control
+                crawlInParallel(executor, folder, ctx, stats, levels);
+                super.stopTimer();                          // Timer control
+                break;
+            default:
+                throw new IllegalStateException("Unsupported crawl mode: " + mode);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        double objectsPerSec = elapsed == 0L ? 0.0 : stats.objects * 1000.0 / elapsed;
+
+        // Done
+        Event doneEvent = new Event(eventNameFolderTreeCrawled, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully crawled folder tree.")
+                    .push("folder")
+                        .append("id", folder.getId())
+                        .append("name", folder.getName())
+                    .pop()
+                    .push("crawl")
+                        .append("mode", mode.name())
+                        .append("depth", depth)
+                        .append("threadCount", mode == Mode.PARALLEL ? threadCount : 1)
+                        .append("objects", stats.objects)
+                        .append("folders", stats.folders)
+                        .append("maxDepth", stats.maxDepth)
+                        .append("elapsed", elapsed)
+                        .append("objectsPerSec", objectsPerSec)
+                        .append("barrierWait", stats.barrierWait)
+                        .append("levels", levels)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+
+    /**
+     * List the tree one level at a time, listing all the folders of a level in parallel and waiting
+     * for the whole level before starting the next
+     */
+    private void crawlInParallel(
+            ExecutorService executor,
+            Folder root,
+            final OperationContext ctx,
+            CrawlStats stats,
+            BasicDBList levels) throws Exception
+    {
+        List<Folder> folders = Collections.singletonList(root);
+        for (int level = 1; !folders.isEmpty() && (depth == -1 || level <= depth); level++)
+        {
+            List<Callable<FolderListed>> tasks = new ArrayList<Callable<FolderListed>>(folders.size());
+            for (final Folder folder : folders)
+            {
+                tasks.add(new Callable<FolderListed>()
+                {
+                    @Override
+                    public FolderListed call() throws Exception
+                    {
+                        return listFolder(folder, ctx);
+                    }
+                });
+            }
+            long levelStart = System.currentTimeMillis();
+            List<FolderListed> listed = invokeAll(executor, tasks);
+            long levelTime = System.currentTimeMillis() - levelStart;
+
+            // Gather the level statistics and the folders of the next level
+            List<Folder> subfolders = new ArrayList<Folder>();
+            long objects = 0L;
+            long totalTime = 0L;
+            long maxTime = 0L;
+            for (FolderListed folderListed : listed)
+            {
+                subfolders.addAll(folderListed.subfolders);
+                objects += folderListed.objects;
+                totalTime += folderListed.time;
+                maxTime = Math.max(maxTime, folderListed.time);
+            }
+            // The time between each listing finishing and the slowest listing of the level finishing
+            long barrierWait = maxTime * listed.size() - totalTime;
+            if (objects > 0L)
+            {
+                stats.maxDepth = level;
+            }
+            stats.objects += objects;
+            stats.folders += subfolders.size();
+            levels.add(BasicDBObjectBuilder
+                    .start()
+                    .append("level", level)
+                    .append("folders", folders.size())
+                    .append("objects", objects)
+                    .append("levelTime", levelTime)
+                    .append("avgTime", totalTime / listed.size())
+                    .append("maxTime", maxTime)
+                    .append("barrierWait", barrierWait)
+                    .get());
+            stats.barrierWait += barrierWait;
+            folders = subfolders;
+        }
+    }
+
+    /**
+     * Page through the children of a folder, keeping the subfolders
+     */
+    private static FolderListed listFolder(Folder folder, OperationContext ctx)
+    {
+        long start = System.currentTimeMillis();
+        List<Folder> subfolders = new ArrayList<Folder>();
+        long objects = 0L;
+        ItemIterable<CmisObject> children = folder.getChildren(ctx);
+        ItemIterable<CmisObject> pageOfChildren = children.skipTo(objects);
+        while (pageOfChildren.getPageNumItems() > 0L)
+        {
+            for (CmisObject child : pageOfChildren)
+            {
+                objects++;
+                if (child instanceof Folder)
+                {
+                    subfolders.add((Folder) child);
+                }
+            }
+            // Get the next page of children
+            pageOfChildren = children.skipTo(objects);
+        }
+        return new FolderListed(subfolders, objects, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The outcome of listing a single folder
+     */
+    private static class FolderListed
+    {
+        private final List<Folder> subfolders;
+        private final long objects;
+        private final long time;
+        private FolderListed(List<Folder> subfolders, long objects, long time)
+        {
+            this.subfolders = subfolders;
+            this.objects = objects;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Running totals for a crawl
+     */
+    private static class CrawlStats
+    {
+        private long objects;
+        private long folders;
+        private int maxDepth;
+        private long barrierWait;
+
+        /**
+         * Count the objects in trees returned by the server
+         */
+        private void count(List<Tree<FileableCmisObject>> trees, int level)
+        {
+            if (trees == null || trees.isEmpty())
+            {
+                return;
+            }
+            maxDepth = Math.max(maxDepth, level);
+            for (Tree<FileableCmisObject> tree : trees)
+            {
+                objects++;
+                if (tree.getItem() instanceof Folder)
+                {
+                    folders++;
+                }
+                count(tree.getChildren(), level + 1);
+            }
+        }
+    }
+}
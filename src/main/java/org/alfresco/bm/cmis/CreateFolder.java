@@ -20,7 +20,6 @@ package org.alfresco.bm.cmis;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import org.alfresco.bm.event.Event;
 import org.alfresco.bm.event.EventResult;
@@ -52,6 +51,7 @@ public class CreateFolder extends AbstractCMISEventProcessor
     public static final String EVENT_NAME_FOLDER_CREATED = "cmis.folderCreated";
     
     private String eventNameFolderCreated;
+    private ObjectDataService objectDataService;
 
     /**
      */
@@ -69,6 +69,16 @@ public class CreateFolder extends AbstractCMISEventProcessor
         this.eventNameFolderCreated = eventNameFolderCreated;
     }
 
+    /**
+     * Record the folders created in a {@link ObjectDataService mirror} so that later scenarios can find them
+     * 
+     * @since 1.4
+     */
+    public void setObjectDataService(ObjectDataService objectDataService)
+    {
+        this.objectDataService = objectDataService;
+    }
+
     @Override
     protected EventResult processCMISEvent(Event event) throws Exception
     {
@@ -88,7 +98,7 @@ public class CreateFolder extends AbstractCMISEventProcessor
         Folder folder = data.getBreadcrumb().getLast();
         
         // The folder name
-        String newFolderName = UUID.randomUUID().toString() + "-" + super.getName();
+        String newFolderName = getRandomName(data.getRandom()) + "-" + super.getName();
         
         Map<String, String> newFolderProps = new HashMap<String, String>();
         newFolderProps.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
@@ -100,6 +110,12 @@ public class CreateFolder extends AbstractCMISEventProcessor
 
         // Append it to the breadcrumb
         data.getBreadcrumb().add(newFolder);
+        if (objectDataService != null)
+        {
+            objectDataService.addFolder(
+                    newFolder.getId(), newFolder.getType().getId(), newFolder.getName(),
+                    newFolder.getPath(), folder.getId());
+        }
         
         // Done
         Event doneEvent = new Event(eventNameFolderCreated, data);
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Create a tree of folders
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing an existing folder.
+ *
+ * <h1>Actions</h1>
+ *
+ * Create a tree of folders, <b>width</b> folders wide in each folder and <b>depth</b> levels deep, in the
+ * given folder.  The folders of each level are created concurrently using the session's
+ * {@link SessionWorkers workers}.  The IDs of all new folders replace the {@link CMISEventData#getObjectIds() object IDs} of the data.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_FOLDER_TREE_CREATED}: The {@link CMISEventData data object} with the folder IDs<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CreateFolderTree extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_FOLDER_TREE_CREATED = "cmis.folderTreeCreated";
+
+    private final int width;
+    private final int depth;
+    private final int threadCount;
+    private String eventNameFolderTreeCreated;
+
+    /**
+     * @param width                 the number of folders to create in each folder
+     * @param depth                 the number of levels of folders to create
+     * @param threadCount           the maximum number of folders to create at the same time
+     */
+    public CreateFolderTree(int width, int depth, int threadCount)
+    {
+        super();
+        if (width < 1 || depth < 1 || threadCount < 1)
+        {
+            throw new IllegalArgumentException("Folder tree width, depth and thread count must be at least 1.");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.threadCount = threadCount;
+        this.eventNameFolderTreeCreated = EVENT_NAME_FOLDER_TREE_CREATED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_FOLDER_TREE_CREATED default} event name for 'folder tree created'.
+     */
+    public void setEventNameFolderTreeCreated(String eventNameFolderTreeCreated)
+    {
+        this.eventNameFolderTreeCreated = eventNameFolderTreeCreated;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to create folder tree; no session provided.", false);
+        }
+        if (data.getBreadcrumb().isEmpty())
+        {
+            return new EventResult("Unable to create folder tree; no folder provided.", false);
+        }
+        Folder folder = data.getBreadcrumb().getLast();
+        final Session session = data.getSession();
+
+        List<String> allFolderIds = new ArrayList<String>();
+        List<String> parentIds = Collections.singletonList(folder.getId());
+        BasicDBList levels = new BasicDBList();
+        ExecutorService executor = data.getWorkers().get(threadCount);
+        super.resumeTimer();                                // Timer control
+        for (int level = 1; level <= depth; level++)
+        {
+            // Build the folders of this level
+            List<Callable<FolderCreated>> tasks = new ArrayList<Callable<FolderCreated>>(parentIds.size() * width);
+            for (final String parentId : parentIds)
+            {
+                for (int i = 0; i < width; i++)
+                {
+                    final String newFolderName = super.getName() + "-" + level + "-" + i;
+                    tasks.add(new Callable<FolderCreated>()
+                    {
+                        @Override
+                        public FolderCreated call() throws Exception
+                        {
+                            Map<String, String> newFolderProps = new HashMap<String, String>();
+                            newFolderProps.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+                            newFolderProps.put(PropertyIds.NAME, newFolderName);
+                            long start = System.currentTimeMillis();
+                            ObjectId newFolderId = session.createFolder(newFolderProps, session.createObjectId(parentId));
+                            return new FolderCreated(newFolderId.getId(), System.currentTimeMillis() - start);
+                        }
+                    });
+                }
+            }
+            long levelStart = System.currentTimeMillis();
+            List<FolderCreated> created = invokeAll(executor, tasks);
+            long levelTime = System.currentTimeMillis() - levelStart;
+
+            // Gather the level statistics
+            List<String> levelFolderIds = new ArrayList<String>(created.size());
+            long totalTime = 0L;
+            long maxTime = 0L;
+            for (FolderCreated folderCreated : created)
+            {
+                levelFolderIds.add(folderCreated.id);
+                totalTime += folderCreated.time;
+                maxTime = Math.max(maxTime, folderCreated.time);
+            }
+            levels.add(BasicDBObjectBuilder
+                    .start()
+                    .append("level", level)
+                    .append("folders", created.size())
+                    .append("levelTime", levelTime)
+                    .append("avgTime", totalTime / created.size())
+                    .append("maxTime", maxTime)
+                    .get());
+            allFolderIds.addAll(levelFolderIds);
+            parentIds = levelFolderIds;
+        }
+        super.stopTimer();                                  // Timer control
+
+        // Hand the folders on for further processing
+        data.getObjectIds().clear();
+        data.getObjectIds().addAll(allFolderIds);
+
+        // Done
+        Event doneEvent = new Event(eventNameFolderTreeCreated, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully created folder tree.")
+                    .push("folder")
+                        .append("id", folder.getId())
+                        .append("name", folder.getName())
+                    .pop()
+                    .push("tree")
+                        .append("width", width)
+                        .append("depth", depth)
+                        .append("threadCount", threadCount)
+                        .append("folders", allFolderIds.size())
+                        .append("levels", levels)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+
+    /**
+     * The outcome of creating a single folder
+     */
+    private static class FolderCreated
+    {
+        private final String id;
+        private final long time;
+        private FolderCreated(String id, long time)
+        {
+            this.id = id;
+            this.time = time;
+        }
+    }
+}
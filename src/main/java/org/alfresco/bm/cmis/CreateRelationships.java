@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Create relationships from one document to a number of others
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing at least two document {@link CMISEventData#getObjectIds() object IDs}
+ * e.g. from {@link UploadDocuments}.
+ *
+ * <h1>Actions</h1>
+ *
+ * Create a relationship from the first document to each of the following documents, up to the fan-out.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_RELATIONSHIPS_CREATED}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class CreateRelationships extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_RELATIONSHIPS_CREATED = "cmis.relationshipsCreated";
+
+    private final String relationshipType;
+    private final int fanOut;
+    private String eventNameRelationshipsCreated;
+
+    /**
+     * @param relationshipType      the CMIS relationship type to create e.g. <tt>R:cm:references</tt>
+     * @param fanOut                the number of relationships to create from the source document
+     */
+    public CreateRelationships(String relationshipType, int fanOut)
+    {
+        super();
+        if (fanOut < 1)
+        {
+            throw new IllegalArgumentException("The relationship fan-out must be at least 1.");
+        }
+        this.relationshipType = relationshipType;
+        this.fanOut = fanOut;
+        this.eventNameRelationshipsCreated = EVENT_NAME_RELATIONSHIPS_CREATED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_RELATIONSHIPS_CREATED default} event name for 'relationships created'.
+     */
+    public void setEventNameRelationshipsCreated(String eventNameRelationshipsCreated)
+    {
+        this.eventNameRelationshipsCreated = eventNameRelationshipsCreated;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to create relationships; no session provided.", false);
+        }
+        List<String> objectIds = data.getObjectIds();
+        if (objectIds.size() < 2)
+        {
+            return new EventResult("Unable to create relationships; at least two documents are required.", false);
+        }
+        Session session = data.getSession();
+        String sourceId = objectIds.get(0);
+        List<String> targetIds = objectIds.subList(1, Math.min(objectIds.size(), fanOut + 1));
+
+        long totalTime = 0L;
+        long maxTime = 0L;
+        super.resumeTimer();                                // Timer control
+        for (String targetId : targetIds)
+        {
+            Map<String, String> properties = new HashMap<String, String>();
+            properties.put(PropertyIds.OBJECT_TYPE_ID, relationshipType);
+            properties.put(PropertyIds.SOURCE_ID, sourceId);
+            properties.put(PropertyIds.TARGET_ID, targetId);
+            long start = System.currentTimeMillis();
+            session.createRelationship(properties);
+            long time = System.currentTimeMillis() - start;
+            totalTime += time;
+            maxTime = Math.max(maxTime, time);
+        }
+        super.stopTimer();                                  // Timer control
+
+        // Done
+        Event doneEvent = new Event(eventNameRelationshipsCreated, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully created relationships.")
+                    .push("relationships")
+                        .append("type", relationshipType)
+                        .append("sourceId", sourceId)
+                        .append("fanOut", fanOut)
+                        .append("created", targetIds.size())
+                        .append("avgTime", totalTime / targetIds.size())
+                        .append("maxTime", maxTime)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
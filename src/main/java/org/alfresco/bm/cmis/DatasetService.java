@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Random;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * The shape of a reproducible dataset for read scenarios and the progress made in building it,
+ * recorded in a MongoDB collection so that an interrupted build can be resumed.
+ * <p/>
+ * The dataset is a tree of folders below a root folder: every folder has the same number of subfolders,
+ * down to the given depth, and the same number of <tt>.gif</tt> documents.  Each folder is a unit of work
+ * with a record of its state (<tt>pending</tt>, <tt>inProgress</tt> or <tt>done</tt>) and of the number of
+ * its documents created so far.  Names, sizes and content depend only on the shape and the seed.
+ * <p/>
+ * The shape and seed are recorded with the progress.  If a build is started with a different shape or seed,
+ * the progress of the earlier build is discarded and the dataset is planned again from the start.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class DatasetService
+{
+    public static final String FIELD_ID = "_id";
+    public static final String FIELD_DEPTH = "depth";
+    public static final String FIELD_STATE = "state";
+    public static final String FIELD_DOCUMENTS = "documents";
+    public static final String FIELD_UPDATED = "updated";
+    public static final String STATE_PENDING = "pending";
+    public static final String STATE_IN_PROGRESS = "inProgress";
+    public static final String STATE_DONE = "done";
+    /** The ID of the record of the root folder */
+    public static final String ROOT_ID = "/";
+    /** The ID of the record of the shape of the dataset */
+    public static final String SHAPE_ID = "shape";
+    /** The most folders in a dataset */
+    public static final long MAX_FOLDERS = 1000000L;
+
+    private static final byte[] GIF_HEADER = new byte[] {'G', 'I', 'F', '8', '9', 'a'};
+
+    /**
+     * The distribution of document sizes
+     */
+    public enum SizeDistribution
+    {
+        /** Always the mean size */
+        FIXED,
+        /** Uniformly distributed between 0 and twice the mean */
+        UNIFORM,
+        /** Exponentially distributed around the mean: mostly small documents and a few large ones */
+        EXPONENTIAL
+    }
+
+    private final DBCollection collection;
+    private final String parentPath;
+    private final String rootName;
+    private final int depth;
+    private final int fanOut;
+    private final int documentsPerFolder;
+    private SizeDistribution sizeDistribution;
+    private long sizeMean;
+    private long sizeMax;
+    private long seed;
+
+    /**
+     * @param db                    the database holding the progress of the dataset
+     * @param collection            the name of the collection holding the progress of the dataset
+     * @param parentPath            the path of the folder in which the dataset root is created
+     * @param rootName              the name of the dataset root folder
+     * @param depth                 the number of levels of subfolders below the root (0 for the root only)
+     * @param fanOut                the number of subfolders in each folder above the lowest level
+     * @param documentsPerFolder    the number of documents in each folder
+     */
+    public DatasetService(
+            DB db, String collection,
+            String parentPath, String rootName,
+            int depth, int fanOut, int documentsPerFolder)
+    {
+        if (depth < 0 || fanOut < 1 || documentsPerFolder < 0)
+        {
+            throw new IllegalArgumentException("Invalid dataset shape: depth " + depth + ", fan-out " + fanOut + ", documents " + documentsPerFolder);
+        }
+        if (getFolderCount(depth, fanOut) > MAX_FOLDERS)
+        {
+            throw new IllegalArgumentException("A dataset may not have more than " + MAX_FOLDERS + " folders.");
+        }
+        this.collection = db.getCollection(collection);
+        this.parentPath = parentPath.endsWith("/") ? parentPath : parentPath + "/";
+        this.rootName = rootName;
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.documentsPerFolder = documentsPerFolder;
+        this.sizeDistribution = SizeDistribution.FIXED;
+        this.sizeMean = 10240L;
+        this.sizeMax = 0L;
+        this.seed = 1L;
+
+        this.collection.ensureIndex(new BasicDBObject(FIELD_STATE, 1).append(FIELD_DEPTH, 1));
+    }
+
+    private static long getFolderCount(int depth, int fanOut)
+    {
+        long count = 0L;
+        long levelCount = 1L;
+        for (int level = 0; level <= depth && count <= MAX_FOLDERS; level++)
+        {
+            count += levelCount;
+            levelCount *= fanOut;
+        }
+        return count;
+    }
+
+    /**
+     * Override the default {@link SizeDistribution#FIXED fixed} document size
+     */
+    public void setSizeDistribution(SizeDistribution sizeDistribution)
+    {
+        this.sizeDistribution = sizeDistribution;
+    }
+
+    /**
+     * Override the default mean document size (bytes)
+     */
+    public void setSizeMean(long sizeMean)
+    {
+        this.sizeMean = sizeMean;
+    }
+
+    /**
+     * Set the largest document size (bytes) or 0 for no limit
+     */
+    public void setSizeMax(long sizeMax)
+    {
+        this.sizeMax = sizeMax;
+    }
+
+    /**
+     * Override the default seed for the document sizes and content
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    public int getDocumentsPerFolder()
+    {
+        return documentsPerFolder;
+    }
+
+    /**
+     * Record all folders of the dataset that are not yet recorded, and make folders that were being
+     * worked on by an interrupted build available again
+     * 
+     * @return                      the number of folders still to build
+     */
+    public long plan()
+    {
+        DBObject shape = getShape();
+        DBObject recordedShape = collection.findOne(new BasicDBObject(FIELD_ID, SHAPE_ID));
+        if (!shape.equals(recordedShape))
+        {
+            // Progress made on another dataset is of no use
+            collection.remove(new BasicDBObject());
+            collection.insert(shape);
+        }
+        long folderCount = getFolderCount(depth, fanOut);
+        if (collection.count(new BasicDBObject(FIELD_STATE, new BasicDBObject("$exists", true))) < folderCount)
+        {
+            planFolder(ROOT_ID, 0);
+        }
+        collection.update(
+                new BasicDBObject(FIELD_STATE, STATE_IN_PROGRESS),
+                new BasicDBObject("$set", new BasicDBObject(FIELD_STATE, STATE_PENDING)),
+                false, true);
+        return countRemaining();
+    }
+
+    /**
+     * @return                      the record of everything that the names, sizes and content depend on
+     */
+    private DBObject getShape()
+    {
+        return BasicDBObjectBuilder
+                .start()
+                .append(FIELD_ID, SHAPE_ID)
+                .append("parentPath", parentPath)
+                .append("rootName", rootName)
+                .append(FIELD_DEPTH, depth)
+                .append("fanOut", fanOut)
+                .append(FIELD_DOCUMENTS, documentsPerFolder)
+                .append("sizeDistribution", sizeDistribution.name())
+                .append("sizeMean", sizeMean)
+                .append("sizeMax", sizeMax)
+                .append("seed", seed)
+                .get();
+    }
+
+    private void planFolder(String id, int level)
+    {
+        collection.update(
+                new BasicDBObject(FIELD_ID, id),
+                new BasicDBObject("$setOnInsert", BasicDBObjectBuilder
+                        .start()
+                        .append(FIELD_DEPTH, level)
+                        .append(FIELD_STATE, STATE_PENDING)
+                        .append(FIELD_DOCUMENTS, 0)
+                        .get()),
+                true, false);
+        if (level < depth)
+        {
+            String prefix = ROOT_ID.equals(id) ? "" : id;
+            String namePrefix = ROOT_ID.equals(id) ? "f" : id.substring(id.lastIndexOf('/') + 1) + "-";
+            for (int i = 0; i < fanOut; i++)
+            {
+                planFolder(prefix + "/" + namePrefix + i, level + 1);
+            }
+        }
+    }
+
+    /**
+     * @return                      the number of folders not yet built
+     */
+    public long countRemaining()
+    {
+        BasicDBList states = new BasicDBList();
+        states.add(STATE_PENDING);
+        states.add(STATE_IN_PROGRESS);
+        return collection.count(new BasicDBObject(FIELD_STATE, new BasicDBObject("$in", states)));
+    }
+
+    /**
+     * @return                      the last time (ms since epoch) that any progress was recorded or 0 if never
+     */
+    public long getLastUpdated()
+    {
+        DBCursor cursor = collection
+                .find(new BasicDBObject(FIELD_UPDATED, new BasicDBObject("$exists", true)), new BasicDBObject(FIELD_UPDATED, 1))
+                .sort(new BasicDBObject(FIELD_UPDATED, -1))
+                .limit(1);
+        try
+        {
+            return cursor.hasNext() ? ((Number) cursor.next().get(FIELD_UPDATED)).longValue() : 0L;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Claim the next folder to build, higher levels first
+     * 
+     * @return                      the folder record or <tt>null</tt> if there is nothing left to claim
+     */
+    public DBObject claim()
+    {
+        return collection.findAndModify(
+                new BasicDBObject(FIELD_STATE, STATE_PENDING),
+                null,
+                new BasicDBObject(FIELD_DEPTH, 1),
+                false,
+                new BasicDBObject("$set", new BasicDBObject(FIELD_STATE, STATE_IN_PROGRESS).append(FIELD_UPDATED, System.currentTimeMillis())),
+                true,
+                false);
+    }
+
+    /**
+     * Record the number of documents of a folder created so far
+     */
+    public void progress(String id, int documents)
+    {
+        collection.update(
+                new BasicDBObject(FIELD_ID, id),
+                new BasicDBObject("$set", new BasicDBObject(FIELD_DOCUMENTS, documents).append(FIELD_UPDATED, System.currentTimeMillis())));
+    }
+
+    /**
+     * Record that a folder and all its documents exist
+     */
+    public void done(String id)
+    {
+        collection.update(
+                new BasicDBObject(FIELD_ID, id),
+                new BasicDBObject("$set", new BasicDBObject(FIELD_STATE, STATE_DONE).append(FIELD_UPDATED, System.currentTimeMillis())));
+    }
+
+    /**
+     * @return                      the repository path of the folder with the given record ID
+     */
+    public String getFolderPath(String id)
+    {
+        return parentPath + rootName + (ROOT_ID.equals(id) ? "" : id);
+    }
+
+    /**
+     * @return                      the name of a document in the folder with the given record ID
+     */
+    public String getDocumentName(String id, int index)
+    {
+        String folderName = ROOT_ID.equals(id) ? rootName : id.substring(id.lastIndexOf('/') + 1);
+        return folderName + "-" + index + ".gif";
+    }
+
+    /**
+     * @return                      the content of a document, which is always the same for a given seed
+     */
+    public byte[] getContent(String id, int index)
+    {
+        Random random = new Random(seed ^ ((long) id.hashCode() << 20) ^ index);
+        long size;
+        switch (sizeDistribution)
+        {
+            case UNIFORM:
+                size = (long) (random.nextDouble() * 2.0 * sizeMean);
+                break;
+            case EXPONENTIAL:
+                size = (long) (-sizeMean * Math.log(1.0 - random.nextDouble()));
+                break;
+            default:
+                size = sizeMean;
+        }
+        if (sizeMax > 0L)
+        {
+            size = Math.min(size, sizeMax);
+        }
+        byte[] content = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(GIF_HEADER.length, size))];
+        random.nextBytes(content);
+        System.arraycopy(GIF_HEADER, 0, content, 0, GIF_HEADER.length);
+        return content;
+    }
+}
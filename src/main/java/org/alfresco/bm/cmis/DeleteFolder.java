@@ -50,6 +50,7 @@ public class DeleteFolder extends AbstractCMISEventProcessor
     public static final String EVENT_NAME_FOLDER_DELETED = "cmis.folderDeleted";
     
     private String eventNameFolderDeleted;
+    private ObjectDataService objectDataService;
 
     /**
      */
@@ -67,6 +68,16 @@ public class DeleteFolder extends AbstractCMISEventProcessor
         this.eventNameFolderDeleted = eventNameFolderDeleted;
     }
 
+    /**
+     * Remove the deleted folder and its contents from a {@link ObjectDataService mirror} of created objects
+     * 
+     * @since 1.4
+     */
+    public void setObjectDataService(ObjectDataService objectDataService)
+    {
+        this.objectDataService = objectDataService;
+    }
+
     @Override
     protected EventResult processCMISEvent(Event event) throws Exception
     {
@@ -84,7 +95,10 @@ public class DeleteFolder extends AbstractCMISEventProcessor
         
         // Delete the last folder
         Folder folder = breadcrumb.getLast();
+        String path = folder.getPath();
         folder.deleteTree(true, UnfileObject.DELETE, false);
+        super.stopTimer();                                  // Timer control
+        int forgotten = objectDataService == null ? 0 : objectDataService.removeTree(path);
         
         // Append it to the breadcrumb
         data.getBreadcrumb().removeLast();
@@ -99,6 +113,7 @@ public class DeleteFolder extends AbstractCMISEventProcessor
                         .append("id", folder.getId())
                         .append("name", folder.getName())
                     .pop()
+                    .append("mirroredObjectsRemoved", forgotten)
                     .get(),
                 doneEvent);
         
@@ -21,12 +21,16 @@ package org.alfresco.bm.cmis;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.math.BigInteger;
 
 import org.alfresco.bm.event.Event;
 import org.alfresco.bm.event.EventResult;
 import org.apache.chemistry.opencmis.client.api.CmisObject;
 import org.apache.chemistry.opencmis.client.api.Document;
 import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
 import org.apache.chemistry.opencmis.commons.data.ContentStream;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
 import org.apache.commons.io.FileUtils;
@@ -42,7 +46,9 @@ import com.mongodb.BasicDBObjectBuilder;
  * 
  * <h1>Actions</h1>
  * 
- * Download the current file from the session data
+ * Download the current file from the session data, either in full or as a number of
+ * {@link RangeMode byte ranges} as a viewer of large files would.  The document is found again using
+ * the configured {@link ObjectLookup lookup}.
  * 
  * <h1>Output</h1>
  * 
@@ -54,8 +60,29 @@ import com.mongodb.BasicDBObjectBuilder;
 public class DownloadFile extends AbstractCMISEventProcessor
 {
     public static final String EVENT_NAME_FILE_DOWNLOADED = "cmis.fileDownloaded";
-    
+    public static final int DEFAULT_RANGE_SIZE = 65536;
+    public static final int DEFAULT_RANGE_COUNT = 10;
+
+    /**
+     * How the content is fetched
+     * 
+     * @since 1.4
+     */
+    public static enum RangeMode
+    {
+        /** The whole content in one request */
+        FULL,
+        /** Consecutive ranges from the start of the content */
+        SEQUENTIAL,
+        /** Ranges starting at random offsets */
+        RANDOM
+    }
+
     private String eventNameFileDownloaded;
+    private RangeMode rangeMode;
+    private int rangeSize;
+    private int rangeCount;
+    private ObjectLookup lookup;
 
     /**
      * @param testFileService               service to provide sample files for upload
@@ -64,6 +91,10 @@ public class DownloadFile extends AbstractCMISEventProcessor
     {
         super();
         this.eventNameFileDownloaded = EVENT_NAME_FILE_DOWNLOADED;
+        this.rangeMode = RangeMode.FULL;
+        this.rangeSize = DEFAULT_RANGE_SIZE;
+        this.rangeCount = DEFAULT_RANGE_COUNT;
+        this.lookup = ObjectLookup.PATH;
     }
 
     /**
@@ -74,6 +105,52 @@ public class DownloadFile extends AbstractCMISEventProcessor
         this.eventNameFileDownloaded = eventNameFileDownloaded;
     }
 
+    /**
+     * Override the default {@link RangeMode#FULL full} download
+     * 
+     * @since 1.4
+     */
+    public void setRangeMode(RangeMode rangeMode)
+    {
+        this.rangeMode = rangeMode;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_RANGE_SIZE default} number of bytes in each range
+     * 
+     * @since 1.4
+     */
+    public void setRangeSize(int rangeSize)
+    {
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_RANGE_COUNT default} maximum number of ranges fetched per document
+     * 
+     * @since 1.4
+     */
+    public void setRangeCount(int rangeCount)
+    {
+        this.rangeCount = rangeCount;
+    }
+
+    /**
+     * Override the default {@link ObjectLookup#PATH path} lookup of the document.
+     * The document is always in the session data, so only the {@link ObjectLookup#PATH path}
+     * and {@link ObjectLookup#ID ID} lookups apply.
+     * 
+     * @since 1.4
+     */
+    public void setLookup(ObjectLookup lookup)
+    {
+        if (lookup == ObjectLookup.CACHE)
+        {
+            throw new IllegalArgumentException("Documents are looked up by PATH or ID, not by " + lookup + ".");
+        }
+        this.lookup = lookup;
+    }
+
     @Override
     protected EventResult processCMISEvent(Event event) throws Exception
     {
@@ -102,12 +179,16 @@ public class DownloadFile extends AbstractCMISEventProcessor
         
         // The path
         String path = folderPath + "/" + filename;
+        Session session = data.getSession();
+        OperationContext ctx = getOperationContext(session);
         
         super.resumeTimer();                                // Timer control
         // Look it up.
         try
         {
-            CmisObject foundObj = data.getSession().getObjectByPath(path);
+            CmisObject foundObj = lookup == ObjectLookup.ID
+                    ? session.getObject(document.getId(), ctx)
+                    : session.getObjectByPath(path, ctx);
             if (!(foundObj instanceof Document))
             {
                 return new EventResult("Recently-created document not found at '" + path + "', but found " + foundObj, false);
@@ -118,17 +199,30 @@ public class DownloadFile extends AbstractCMISEventProcessor
         {
             return new EventResult("Unable to find recently-created document: " + path, false);
         }
+        if (rangeMode != RangeMode.FULL)
+        {
+            return downloadRanges(document, data, path);
+        }
         // Now download
+        long downloadStart = System.currentTimeMillis();
+        long timeToFirstByte = -1L;
         ContentStream cs = document.getContentStream();
         if (cs == null)
         {
             return new EventResult("Recently-created document has no content: " + path, false);
         }
-        InputStream is = cs.getStream();
+        PushbackInputStream is = new PushbackInputStream(cs.getStream());
         File file = null;
         long fileSize = 0L;
         try
         {
+            // Wait for the first byte before writing the file
+            int firstByte = is.read();
+            timeToFirstByte = System.currentTimeMillis() - downloadStart;
+            if (firstByte != -1)
+            {
+                is.unread(firstByte);
+            }
             file = File.createTempFile(getName(), ".tmp");
             FileUtils.copyInputStreamToFile(is, file);
         }
@@ -154,11 +248,14 @@ public class DownloadFile extends AbstractCMISEventProcessor
                 BasicDBObjectBuilder
                     .start()
                     .append("msg", "Successfully downloaded document.")
+                    .append("lookup", lookup.name())
+                    .append("pathDepth", ObjectLookup.getPathDepth(path))
                     .push("document")
                         .append("id", document.getId())
                         .append("name", document.getName())
                         .append("paths", document.getPaths())
                         .append("size", fileSize)
+                        .append("timeToFirstByte", timeToFirstByte)
                     .pop()
                     .get(),
                 doneEvent);
@@ -166,4 +263,91 @@ public class DownloadFile extends AbstractCMISEventProcessor
         // Done
         return result;
     }
+
+    /**
+     * Fetch byte ranges of the document according to the {@link RangeMode range mode}.
+     * The timer must be running and is stopped before returning.
+     */
+    private EventResult downloadRanges(Document document, CMISEventData data, String path) throws IOException
+    {
+        long contentLength = document.getContentStreamLength();
+        if (contentLength <= 0L)
+        {
+            super.stopTimer();                              // Timer control
+            return new EventResult("Unable to download ranges; document has no content length: " + document.getId(), false);
+        }
+        int ranges = 0;
+        long bytes = 0L;
+        long totalTime = 0L;
+        long maxTime = 0L;
+        byte[] buffer = new byte[8192];
+        for (int i = 0; i < rangeCount; i++)
+        {
+            long offset;
+            if (rangeMode == RangeMode.SEQUENTIAL)
+            {
+                offset = (long) i * rangeSize;
+                if (offset >= contentLength)
+                {
+                    break;
+                }
+            }
+            else
+            {
+                long maxOffset = Math.max(0L, contentLength - rangeSize);
+                offset = (long) (data.getRandom().nextDouble() * (maxOffset + 1));
+            }
+            long start = System.currentTimeMillis();
+            ContentStream cs = document.getContentStream(BigInteger.valueOf(offset), BigInteger.valueOf(rangeSize));
+            if (cs == null)
+            {
+                super.stopTimer();                          // Timer control
+                return new EventResult("Document has no content: " + document.getId(), false);
+            }
+            InputStream is = cs.getStream();
+            try
+            {
+                int read;
+                while ((read = is.read(buffer)) != -1)
+                {
+                    bytes += read;
+                }
+            }
+            finally
+            {
+                try { is.close(); } catch (IOException e) {}
+            }
+            long time = System.currentTimeMillis() - start;
+            ranges++;
+            totalTime += time;
+            maxTime = Math.max(maxTime, time);
+        }
+        super.stopTimer();                                  // Timer control
+
+        // Done
+        Event doneEvent = new Event(eventNameFileDownloaded, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully downloaded document ranges.")
+                    .append("lookup", lookup.name())
+                    .append("pathDepth", ObjectLookup.getPathDepth(path))
+                    .push("document")
+                        .append("id", document.getId())
+                        .append("name", document.getName())
+                        .append("size", contentLength)
+                    .pop()
+                    .push("ranges")
+                        .append("mode", rangeMode.name())
+                        .append("rangeSize", rangeSize)
+                        .append("count", ranges)
+                        .append("bytes", bytes)
+                        .append("avgTime", ranges == 0 ? 0L : totalTime / ranges)
+                        .append("maxTime", maxTime)
+                        .append("bytesPerSec", totalTime == 0L ? 0.0 : bytes * 1000.0 / totalTime)
+                    .pop()
+                    .get(),
+                doneEvent);
+        return result;
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Rendition;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Stream the content of one of a document's renditions, or of the document itself
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing a document retrieved with its renditions
+ * e.g. by {@link ListRenditions}.
+ *
+ * <h1>Actions</h1>
+ *
+ * Stream the content of the first rendition of the given kind, or the main content if no kind is given,
+ * and record the time to the first byte separately from the time to read all of it.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_RENDITION_DOWNLOADED}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class DownloadRendition extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_RENDITION_DOWNLOADED = "cmis.renditionDownloaded";
+
+    private final String kind;
+    private String eventNameRenditionDownloaded;
+
+    /**
+     * @param kind                  the kind of rendition to download e.g. <tt>cmis:thumbnail</tt> or
+     *                              empty to download the document's main content
+     */
+    public DownloadRendition(String kind)
+    {
+        super();
+        this.kind = (kind == null) ? "" : kind.trim();
+        this.eventNameRenditionDownloaded = EVENT_NAME_RENDITION_DOWNLOADED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_RENDITION_DOWNLOADED default} event name for 'rendition downloaded'.
+     */
+    public void setEventNameRenditionDownloaded(String eventNameRenditionDownloaded)
+    {
+        this.eventNameRenditionDownloaded = eventNameRenditionDownloaded;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to download rendition; no session provided.", false);
+        }
+        if (data.getDocument() == null)
+        {
+            return new EventResult("Unable to download rendition; no document provided.", false);
+        }
+        Document document = data.getDocument();
+        Rendition rendition = null;
+        if (kind.length() > 0)
+        {
+            if (document.getRenditions() != null)
+            {
+                for (Rendition candidate : document.getRenditions())
+                {
+                    if (kind.equals(candidate.getKind()))
+                    {
+                        rendition = candidate;
+                        break;
+                    }
+                }
+            }
+            if (rendition == null)
+            {
+                return new EventResult("Document has no '" + kind + "' rendition: " + document.getId(), false);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        long timeToFirstByte = -1L;
+        long size = 0L;
+        super.resumeTimer();                                // Timer control
+        ContentStream cs = (rendition == null) ? document.getContentStream() : rendition.getContentStream();
+        if (cs == null)
+        {
+            super.stopTimer();                              // Timer control
+            return new EventResult("Document has no content to download: " + document.getId(), false);
+        }
+        InputStream is = cs.getStream();
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                if (timeToFirstByte < 0L)
+                {
+                    timeToFirstByte = System.currentTimeMillis() - start;
+                }
+                size += read;
+            }
+        }
+        finally
+        {
+            try { is.close(); } catch (IOException e) {}
+            super.stopTimer();                              // Timer control
+        }
+        long downloadTime = System.currentTimeMillis() - start;
+
+        // Done
+        Event doneEvent = new Event(eventNameRenditionDownloaded, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully downloaded rendition.")
+                    .push("document")
+                        .append("id", document.getId())
+                        .append("name", document.getName())
+                    .pop()
+                    .push("rendition")
+                        .append("kind", rendition == null ? "content" : rendition.getKind())
+                        .append("mimeType", cs.getMimeType())
+                        .append("size", size)
+                        .append("timeToFirstByte", timeToFirstByte)
+                        .append("downloadTime", downloadTime)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
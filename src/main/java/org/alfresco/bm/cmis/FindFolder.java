@@ -96,7 +96,7 @@ public class FindFolder extends AbstractCMISEventProcessor
         String query = "SELECT " + objectIdQueryName + " FROM " + type.getQueryName();
     
         // execute query
-        ItemIterable<QueryResult> queryResults = session.query(query, false);
+        ItemIterable<QueryResult> queryResults = session.query(query, false, getOperationContext(session));
 
         long totalResults = queryResults.getTotalNumItems();               // For information only
         Folder folder = null;
@@ -109,7 +109,7 @@ public class FindFolder extends AbstractCMISEventProcessor
             return new EventResult("Result size unknown.  Unable to choose a random folder.", false);
         }
         // Choose a random skip value
-        long skip = (long) (Math.random() * (double) totalResults);
+        long skip = (long) (data.getRandom().nextDouble() * (double) totalResults);
         
         Iterable<QueryResult> pageQueryResults = queryResults.skipTo(skip);
         Iterator<QueryResult> pageQueryIterator = pageQueryResults.iterator();
@@ -117,7 +117,7 @@ public class FindFolder extends AbstractCMISEventProcessor
         {
             QueryResult result = pageQueryIterator.next();
             String objectId = result.getPropertyValueByQueryName(objectIdQueryName);
-            folder = (Folder) session.getObject(session.createObjectId(objectId));
+            folder = (Folder) session.getObject(session.createObjectId(objectId), getOperationContext(session));
         }
         else
         {
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Relationship;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.enums.RelationshipDirection;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Traverse the relationships of a document
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } whose first {@link CMISEventData#getObjectIds() object ID} is the
+ * document to start from e.g. the source used by {@link CreateRelationships}.
+ *
+ * <h1>Actions</h1>
+ *
+ * Page through the relationships of the document in the given direction
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_RELATIONSHIPS_RETRIEVED}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class GetRelationships extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_RELATIONSHIPS_RETRIEVED = "cmis.relationshipsRetrieved";
+
+    private RelationshipDirection direction;
+    private String eventNameRelationshipsRetrieved;
+
+    /**
+     */
+    public GetRelationships()
+    {
+        super();
+        this.direction = RelationshipDirection.EITHER;
+        this.eventNameRelationshipsRetrieved = EVENT_NAME_RELATIONSHIPS_RETRIEVED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_RELATIONSHIPS_RETRIEVED default} event name for 'relationships retrieved'.
+     */
+    public void setEventNameRelationshipsRetrieved(String eventNameRelationshipsRetrieved)
+    {
+        this.eventNameRelationshipsRetrieved = eventNameRelationshipsRetrieved;
+    }
+
+    /**
+     * @param direction             the relationships to follow: <tt>SOURCE</tt>, <tt>TARGET</tt> or
+     *                              <tt>EITHER</tt> (default)
+     */
+    public void setDirection(RelationshipDirection direction)
+    {
+        this.direction = direction;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to get relationships; no session provided.", false);
+        }
+        if (data.getObjectIds().isEmpty())
+        {
+            return new EventResult("Unable to get relationships; no document provided.", false);
+        }
+        Session session = data.getSession();
+        String objectId = data.getObjectIds().get(0);
+        OperationContext ctx = getOperationContext(session);
+
+        super.resumeTimer();                                // Timer control
+        ItemIterable<Relationship> relationships = session.getRelationships(
+                session.createObjectId(objectId), true, direction, null, ctx);
+        int pageCount = 0;
+        long count = 0L;
+        // We have to iterate using paging
+        ItemIterable<Relationship> pageOfRelationships = relationships.skipTo(count);
+        while (pageOfRelationships.getPageNumItems() > 0L)
+        {
+            pageCount++;
+            for (@SuppressWarnings("unused") Relationship relationship : pageOfRelationships)
+            {
+                count++;
+            }
+            // Get the next page of relationships
+            pageOfRelationships = relationships.skipTo(count);
+        }
+        super.stopTimer();                                  // Timer control
+
+        // Done
+        Event doneEvent = new Event(eventNameRelationshipsRetrieved, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully retrieved relationships.")
+                    .push("relationships")
+                        .append("objectId", objectId)
+                        .append("direction", direction.value())
+                        .append("count", count)
+                        .append("pageCount", pageCount)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
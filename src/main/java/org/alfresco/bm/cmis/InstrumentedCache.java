@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.cache.CacheImpl;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * The default OpenCMIS session cache, counting hits, misses, evictions and expiries and estimating the
+ * memory it uses.  Sessions use it through the {@link SessionParameter#CACHE_CLASS} parameter and the
+ * statistics of a session are available from {@link #getStats(Session)}.
+ * <p/>
+ * The cache does not report what it holds, so the objects in it are tracked alongside it with the same
+ * capacity, least-recently-used order and time-to-live.  Evictions are the objects pushed out by that
+ * capacity and expiries are objects that outlived the time-to-live when they were next read.  The memory
+ * estimate is the sum of the estimated sizes of the objects held.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class InstrumentedCache extends CacheImpl
+{
+    private static final long serialVersionUID = 2637051489813270410L;
+
+    /** Rough per-object and per-property overheads (bytes) for the memory estimate */
+    private static final int OBJECT_OVERHEAD = 512;
+    private static final int PROPERTY_OVERHEAD = 96;
+    /** The OpenCMIS defaults */
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final long DEFAULT_CACHE_TTL = 2L * 60L * 60L * 1000L;
+
+    private static final Map<Session, CacheStats> STATS_BY_SESSION =
+            Collections.synchronizedMap(new WeakHashMap<Session, CacheStats>());
+
+    /**
+     * @return the statistics of the session's cache or <tt>null</tt> if the session does not use this cache
+     */
+    public static CacheStats getStats(Session session)
+    {
+        return STATS_BY_SESSION.get(session);
+    }
+
+    private final CacheStats stats;
+    /** Set while a path lookup is in progress, so that the ID lookup it makes is not counted again */
+    private final ThreadLocal<Boolean> inPathLookup;
+
+    public InstrumentedCache()
+    {
+        super();
+        this.stats = new CacheStats();
+        this.inPathLookup = new ThreadLocal<Boolean>();
+    }
+
+    @Override
+    public void initialize(Session session, Map<String, String> parameters)
+    {
+        super.initialize(session, parameters);
+        stats.setLimits(
+                (int) Math.min(Integer.MAX_VALUE, getLimit(parameters, SessionParameter.CACHE_SIZE_OBJECTS, DEFAULT_CACHE_SIZE)),
+                getLimit(parameters, SessionParameter.CACHE_TTL_OBJECTS, DEFAULT_CACHE_TTL));
+        STATS_BY_SESSION.put(session, stats);
+    }
+
+    /**
+     * @return                      the positive value of the session parameter or the OpenCMIS default
+     */
+    private static long getLimit(Map<String, String> parameters, String name, long defaultValue)
+    {
+        String value = parameters.get(name);
+        try
+        {
+            long number = value == null ? defaultValue : Long.parseLong(value.trim());
+            return number > 0L ? number : defaultValue;
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public CmisObject getById(String objectId, String cacheKey)
+    {
+        CmisObject object = super.getById(objectId, cacheKey);
+        if (inPathLookup.get() == null)
+        {
+            stats.read(objectId, object);
+        }
+        return object;
+    }
+
+    @Override
+    public CmisObject getByPath(String path, String cacheKey)
+    {
+        CmisObject object;
+        inPathLookup.set(Boolean.TRUE);
+        try
+        {
+            object = super.getByPath(path, cacheKey);
+        }
+        finally
+        {
+            inPathLookup.remove();
+        }
+        stats.read(object == null ? null : object.getId(), object);
+        return object;
+    }
+
+    @Override
+    public void put(CmisObject object, String cacheKey)
+    {
+        super.put(object, cacheKey);
+        stats.put(object);
+    }
+
+    @Override
+    public void putPath(String path, CmisObject object, String cacheKey)
+    {
+        super.putPath(path, object, cacheKey);
+        stats.put(object);
+    }
+
+    @Override
+    public void remove(String objectId)
+    {
+        super.remove(objectId);
+        stats.remove(objectId);
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        stats.clear();
+    }
+
+    /**
+     * Cache statistics for one session
+     */
+    public static class CacheStats
+    {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong expiries = new AtomicLong();
+        /** The time each object was put into the cache and its estimated size, in least-recently-used order */
+        private final LinkedHashMap<String, long[]> entries;
+        private int maxSize;
+        private long ttl;
+        private long bytes;
+
+        CacheStats()
+        {
+            this.entries = new LinkedHashMap<String, long[]>(16, 0.75f, true);
+            this.maxSize = DEFAULT_CACHE_SIZE;
+            this.ttl = DEFAULT_CACHE_TTL;
+        }
+
+        synchronized void setLimits(int maxSize, long ttl)
+        {
+            this.maxSize = maxSize;
+            this.ttl = ttl;
+        }
+
+        /**
+         * Count a read of the cache
+         * 
+         * @param objectId              the ID of the object read or <tt>null</tt> if unknown
+         * @param object                the object found or <tt>null</tt> on a miss
+         */
+        synchronized void read(String objectId, CmisObject object)
+        {
+            if (object != null)
+            {
+                hits.incrementAndGet();
+                // Keep the same order as the cache
+                entries.get(objectId);
+                return;
+            }
+            misses.incrementAndGet();
+            long[] entry = objectId == null ? null : entries.get(objectId);
+            if (entry != null && System.currentTimeMillis() - entry[0] > ttl)
+            {
+                // The cache drops objects that have outlived their time-to-live when they are read
+                expiries.incrementAndGet();
+                removeEntry(objectId);
+            }
+        }
+
+        synchronized void put(CmisObject object)
+        {
+            if (object == null || object.getId() == null)
+            {
+                return;
+            }
+            long objectBytes = estimateBytes(object);
+            long[] previous = entries.put(object.getId(), new long[] {System.currentTimeMillis(), objectBytes});
+            bytes += objectBytes - (previous == null ? 0L : previous[1]);
+            // The least-recently-used objects are pushed out
+            Iterator<Map.Entry<String, long[]>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxSize && iterator.hasNext())
+            {
+                bytes -= iterator.next().getValue()[1];
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        synchronized void remove(String objectId)
+        {
+            removeEntry(objectId);
+        }
+
+        synchronized void clear()
+        {
+            entries.clear();
+            bytes = 0L;
+        }
+
+        private void removeEntry(String objectId)
+        {
+            long[] entry = entries.remove(objectId);
+            if (entry != null)
+            {
+                bytes -= entry[1];
+            }
+        }
+
+        static long estimateBytes(CmisObject object)
+        {
+            long objectBytes = OBJECT_OVERHEAD;
+            if (object.getProperties() != null)
+            {
+                for (Property<?> property : object.getProperties())
+                {
+                    String value = property.getValueAsString();
+                    objectBytes += PROPERTY_OVERHEAD + 2L * property.getId().length() + (value == null ? 0 : 2L * value.length());
+                }
+            }
+            return objectBytes;
+        }
+
+        public long getHits()
+        {
+            return hits.get();
+        }
+
+        public long getMisses()
+        {
+            return misses.get();
+        }
+
+        public long getEvictions()
+        {
+            return evictions.get();
+        }
+
+        public long getExpiries()
+        {
+            return expiries.get();
+        }
+
+        /**
+         * @return the number of objects in the cache
+         */
+        public synchronized int getSize()
+        {
+            return entries.size();
+        }
+
+        public synchronized long getEstimatedBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * @return the current counts, to be given to {@link #toDBObject(long[])} later
+         */
+        public long[] snapshot()
+        {
+            return new long[] {hits.get(), misses.get(), evictions.get(), expiries.get()};
+        }
+
+        /**
+         * @param since                 a {@link #snapshot() snapshot} taken earlier or <tt>null</tt>
+         * @return                      the counts since the snapshot and the session totals
+         */
+        public DBObject toDBObject(long[] since)
+        {
+            if (since == null)
+            {
+                since = new long[4];
+            }
+            long totalHits = hits.get();
+            long totalMisses = misses.get();
+            long totalEvictions = evictions.get();
+            long totalExpiries = expiries.get();
+            return BasicDBObjectBuilder.start()
+                    .append("hits", totalHits - since[0])
+                    .append("misses", totalMisses - since[1])
+                    .append("evictions", totalEvictions - since[2])
+                    .append("expiries", totalExpiries - since[3])
+                    .push("session")
+                        .append("hits", totalHits)
+                        .append("misses", totalMisses)
+                        .append("hitRatio", (totalHits + totalMisses) == 0L ? 0.0 : (double) totalHits / (totalHits + totalMisses))
+                        .append("evictions", totalEvictions)
+                        .append("expiries", totalExpiries)
+                        .append("size", getSize())
+                        .append("estimatedBytes", getEstimatedBytes())
+                    .pop()
+                    .get();
+        }
+    }
+}
@@ -114,7 +114,7 @@ public class IterateMultipleDocumentProperties extends AbstractCMISEventProcesso
             document = null;
             try
             {
-                document = (Document) session.getObject(session.createObjectId(objectId));
+                document = (Document) session.getObject(session.createObjectId(objectId), getOperationContext(session));
             }
             catch (Exception e)
             {
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * A thread-safe histogram of latencies (ms) with log-linear buckets, which keeps the
+ * relative error of the reported percentiles below about 6% for any value.
+ * <p/>
+ * Values below 32 have a bucket each.  Above that, each power of two is split into 16 buckets.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class LatencyHistogram
+{
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BITS = 5;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - LINEAR_BITS) * SUB_BUCKETS;
+    /** Limit on the samples added for a single stall so that one huge value cannot stall the driver */
+    public static final int MAX_CORRECTION_SAMPLES = 10000;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong max;
+
+    public LatencyHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    static int getBucket(long value)
+    {
+        if (value < LINEAR_BUCKETS)
+        {
+            return (int) Math.max(0L, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return          the largest value that falls into the bucket
+     */
+    static long getBucketMax(int bucket)
+    {
+        if (bucket < LINEAR_BUCKETS)
+        {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (((long) subBucket + 1L) << shift) - 1L;
+    }
+
+    /**
+     * Record a single latency
+     */
+    public void record(long value)
+    {
+        value = Math.max(0L, value);
+        counts.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value))
+        {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Record a latency, correcting for coordinated omission.  A latency longer than the expected
+     * interval between requests means that the requests due during the stall were never issued;
+     * they are added with the latencies they would have seen, as HdrHistogram does.
+     * 
+     * @param value                 the latency
+     * @param expectedInterval      the expected time between requests or 0 for no correction
+     */
+    public void recordCorrected(long value, long expectedInterval)
+    {
+        record(value);
+        if (expectedInterval <= 0L)
+        {
+            return;
+        }
+        int samples = 0;
+        for (long missed = value - expectedInterval;
+                missed >= expectedInterval && samples < MAX_CORRECTION_SAMPLES;
+                missed -= expectedInterval, samples++)
+        {
+            record(missed);
+        }
+    }
+
+    /**
+     * @return                      a copy of the values recorded so far
+     */
+    public LatencyHistogram copy()
+    {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            long bucketCount = counts.get(i);
+            copy.counts.set(i, bucketCount);
+            copy.count.addAndGet(bucketCount);
+        }
+        copy.max.set(max.get());
+        return copy;
+    }
+
+    /**
+     * @param earlier               an earlier {@link #copy() copy} of this histogram
+     * @return                      the values recorded since the copy was made.  The maximum is that of the
+     *                              highest non-empty bucket.
+     */
+    public LatencyHistogram since(LatencyHistogram earlier)
+    {
+        LatencyHistogram since = new LatencyHistogram();
+        long sinceMax = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            long bucketCount = Math.max(0L, counts.get(i) - earlier.counts.get(i));
+            since.counts.set(i, bucketCount);
+            since.count.addAndGet(bucketCount);
+            if (bucketCount > 0L)
+            {
+                sinceMax = getBucketMax(i);
+            }
+        }
+        since.max.set(Math.min(sinceMax, max.get()));
+        return since;
+    }
+
+    /**
+     * @return                      the counts of the non-empty buckets, by bucket number, for storage
+     */
+    public DBObject toBuckets()
+    {
+        DBObject buckets = new BasicDBObject();
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            long bucketCount = counts.get(i);
+            if (bucketCount > 0L)
+            {
+                buckets.put(Integer.toString(i), bucketCount);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * @param buckets               bucket counts {@link #toBuckets() stored} earlier
+     * @return                      a histogram with the given counts.  The maximum is that of the highest
+     *                              non-empty bucket.
+     */
+    public static LatencyHistogram fromBuckets(DBObject buckets)
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long maxBucket = -1L;
+        for (String key : buckets.keySet())
+        {
+            int bucket = Integer.parseInt(key);
+            long bucketCount = ((Number) buckets.get(key)).longValue();
+            histogram.counts.set(bucket, bucketCount);
+            histogram.count.addAndGet(bucketCount);
+            maxBucket = Math.max(maxBucket, bucket);
+        }
+        histogram.max.set(maxBucket < 0L ? 0L : getBucketMax((int) maxBucket));
+        return histogram;
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * @param percentile            the percentile (0 to 100)
+     * @return                      the value at the percentile, to the precision of the buckets,
+     *                              or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long total = count.get();
+        if (total == 0L)
+        {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+            {
+                return Math.min(getBucketMax(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return                      the count and the usual percentiles
+     */
+    public DBObject toDBObject()
+    {
+        return BasicDBObjectBuilder.start()
+                .append("count", getCount())
+                .append("p50", getValueAtPercentile(50.0))
+                .append("p90", getValueAtPercentile(90.0))
+                .append("p99", getValueAtPercentile(99.0))
+                .append("p999", getValueAtPercentile(99.9))
+                .append("max", getMax())
+                .get();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Document;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * List all versions of a document
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing an existing document.
+ *
+ * <h1>Actions</h1>
+ *
+ * Retrieve all the versions of the document's version series
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_VERSIONS_LISTED}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ListDocumentVersions extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_VERSIONS_LISTED = "cmis.versionsListed";
+
+    private String eventNameVersionsListed;
+
+    /**
+     */
+    public ListDocumentVersions()
+    {
+        super();
+        this.eventNameVersionsListed = EVENT_NAME_VERSIONS_LISTED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_VERSIONS_LISTED default} event name for 'versions listed'.
+     */
+    public void setEventNameVersionsListed(String eventNameVersionsListed)
+    {
+        this.eventNameVersionsListed = eventNameVersionsListed;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to list versions; no session provided.", false);
+        }
+        if (data.getDocument() == null)
+        {
+            return new EventResult("Unable to list versions; no document provided.", false);
+        }
+        Document document = data.getDocument();
+
+        super.resumeTimer();                                // Timer control
+        List<Document> versions = document.getAllVersions(getOperationContext(data.getSession()));
+        super.stopTimer();                                  // Timer control
+
+        BasicDBList versionLabels = new BasicDBList();
+        for (Document version : versions)
+        {
+            versionLabels.add(version.getVersionLabel());
+        }
+
+        // Done
+        Event doneEvent = new Event(eventNameVersionsListed, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully listed document versions.")
+                    .append("versionCount", versions.size())
+                    .push("document")
+                        .append("id", document.getId())
+                        .append("name", document.getName())
+                        .append("versionLabels", versionLabels)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
@@ -88,11 +88,11 @@ public class ListFolderContents extends AbstractCMISEventProcessor
         Folder folder = data.getBreadcrumb().getLast();
 
         // Get details of how to page, etc
-        OperationContext ctx = data.getSession().getDefaultContext();
+        OperationContext ctx = getOperationContext(data.getSession());
         int pageSize = ctx.getMaxItemsPerPage();
         
         super.resumeTimer();                            // Timer control
-        ItemIterable<CmisObject> children = folder.getChildren();
+        ItemIterable<CmisObject> children = folder.getChildren(ctx);
         long totalChildren = children.getTotalNumItems();               // For information only
         int pageCount = 0;
         // We have to iterate using paging
@@ -124,6 +124,8 @@ public class ListFolderContents extends AbstractCMISEventProcessor
                         .append("totalChildren", totalChildren)
                         .append("pageCount", pageCount)
                     .pop()
+                    .append("includeAcls", ctx.isIncludeAcls())
+                    .append("includeRelationships", String.valueOf(ctx.getIncludeRelationships()))
                     .get(),
                 doneEvent);
         
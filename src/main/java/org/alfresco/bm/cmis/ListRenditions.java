@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Rendition;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * List the renditions of a document
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing an existing document.
+ *
+ * <h1>Actions</h1>
+ *
+ * Retrieve the document again, this time with the renditions matching the rendition filter
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_RENDITIONS_LISTED}: The {@link CMISEventData data object} with the document and its renditions<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ListRenditions extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_RENDITIONS_LISTED = "cmis.renditionsListed";
+
+    private final String renditionFilter;
+    private String eventNameRenditionsListed;
+
+    /**
+     * @param renditionFilter       the renditions to list e.g. <tt>cmis:thumbnail</tt> or <tt>*</tt> for all of them
+     */
+    public ListRenditions(String renditionFilter)
+    {
+        super();
+        this.renditionFilter = renditionFilter;
+        this.eventNameRenditionsListed = EVENT_NAME_RENDITIONS_LISTED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_RENDITIONS_LISTED default} event name for 'renditions listed'.
+     */
+    public void setEventNameRenditionsListed(String eventNameRenditionsListed)
+    {
+        this.eventNameRenditionsListed = eventNameRenditionsListed;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to list renditions; no session provided.", false);
+        }
+        if (data.getDocument() == null)
+        {
+            return new EventResult("Unable to list renditions; no document provided.", false);
+        }
+        Session session = data.getSession();
+        OperationContext ctx = new OperationContextImpl(getOperationContext(session));
+        ctx.setRenditionFilterString(renditionFilter);
+        ctx.setCacheEnabled(false);
+
+        super.resumeTimer();                                // Timer control
+        CmisObject documentObj = session.getObject(data.getDocument(), ctx);
+        super.stopTimer();                                  // Timer control
+        if (!(documentObj instanceof Document))
+        {
+            return new EventResult("Unable to list renditions; the object is not a document: " + documentObj, false);
+        }
+        Document document = (Document) documentObj;
+        data.setDocument(document);
+
+        List<Rendition> renditions = document.getRenditions();
+        if (renditions == null)
+        {
+            renditions = Collections.emptyList();
+        }
+        BasicDBList kinds = new BasicDBList();
+        for (Rendition rendition : renditions)
+        {
+            kinds.add(rendition.getKind());
+        }
+
+        // Done
+        Event doneEvent = new Event(eventNameRenditionsListed, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully listed renditions.")
+                    .append("renditionFilter", renditionFilter)
+                    .push("document")
+                        .append("id", document.getId())
+                        .append("name", document.getName())
+                        .append("renditionCount", renditions.size())
+                        .append("renditionKinds", kinds)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
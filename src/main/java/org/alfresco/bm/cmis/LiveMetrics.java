@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process metrics of the CMIS events processed by this driver, kept while the test runs so that
+ * throughput, error rate and latency can be watched live through the {@link LiveMetricsServlet}.
+ * <p/>
+ * For each event name, counts are kept per second for the last minute and latencies are kept in a
+ * {@link LatencyHistogram histogram} for the whole run and for the last complete window.  The time of an
+ * event is the time measured by the event's timer, so it excludes any time during which the timer was suspended.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class LiveMetrics
+{
+    public static final int SECONDS_KEPT = 60;
+    public static final long WINDOW_MS = 10000L;
+
+    private static final LiveMetrics INSTANCE = new LiveMetrics();
+
+    /**
+     * @return the metrics of this driver
+     */
+    public static LiveMetrics get()
+    {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, EventMetrics> metricsByEventName;
+
+    private LiveMetrics()
+    {
+        this.metricsByEventName = new ConcurrentHashMap<String, EventMetrics>();
+    }
+
+    /**
+     * Forget everything recorded so far, as when a new test run starts
+     */
+    public void reset()
+    {
+        metricsByEventName.clear();
+    }
+
+    /**
+     * Record the processing of an event
+     * 
+     * @param eventName             the name of the event
+     * @param time                  the time taken (ms)
+     * @param success               <tt>false</tt> if the event failed
+     */
+    public void record(String eventName, long time, boolean success)
+    {
+        EventMetrics metrics = metricsByEventName.get(eventName);
+        if (metrics == null)
+        {
+            EventMetrics newMetrics = new EventMetrics();
+            metrics = metricsByEventName.putIfAbsent(eventName, newMetrics);
+            if (metrics == null)
+            {
+                metrics = newMetrics;
+            }
+        }
+        metrics.record(System.currentTimeMillis(), time, success);
+    }
+
+    /**
+     * @return the metrics for each event name, sorted by name
+     */
+    public Map<String, EventMetrics> getEventMetrics()
+    {
+        return new TreeMap<String, EventMetrics>(metricsByEventName);
+    }
+
+    /**
+     * Metrics for one event name
+     */
+    public static class EventMetrics
+    {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        /** Per-second counts, indexed by the second modulo {@link LiveMetrics#SECONDS_KEPT} */
+        private final AtomicLongArray secondCounts = new AtomicLongArray(SECONDS_KEPT);
+        private final AtomicLongArray secondErrors = new AtomicLongArray(SECONDS_KEPT);
+        private final AtomicLongArray secondStamps = new AtomicLongArray(SECONDS_KEPT);
+        private volatile LatencyHistogram windowLatencies = new LatencyHistogram();
+        private volatile LatencyHistogram lastWindowLatencies = new LatencyHistogram();
+        private volatile long windowEnd = 0L;
+
+        private EventMetrics()
+        {
+        }
+
+        private void record(long now, long time, boolean success)
+        {
+            count.incrementAndGet();
+            latencies.record(time);
+            if (!success)
+            {
+                errors.incrementAndGet();
+            }
+
+            // Count per second, clearing a slot left over from a previous minute
+            long second = now / 1000L;
+            int slot = (int) (second % SECONDS_KEPT);
+            long stamp = secondStamps.get(slot);
+            if (stamp != second && secondStamps.compareAndSet(slot, stamp, second))
+            {
+                secondCounts.set(slot, 0L);
+                secondErrors.set(slot, 0L);
+            }
+            secondCounts.incrementAndGet(slot);
+            if (!success)
+            {
+                secondErrors.incrementAndGet(slot);
+            }
+
+            // Move on to a new latency window if this one is over
+            if (now >= windowEnd)
+            {
+                synchronized (this)
+                {
+                    if (now >= windowEnd)
+                    {
+                        lastWindowLatencies = windowEnd == 0L ? lastWindowLatencies : windowLatencies;
+                        windowLatencies = new LatencyHistogram();
+                        windowEnd = now + WINDOW_MS;
+                    }
+                }
+            }
+            windowLatencies.record(time);
+        }
+
+        public long getCount()
+        {
+            return count.get();
+        }
+
+        public long getErrors()
+        {
+            return errors.get();
+        }
+
+        /**
+         * @return latencies since the start of the run
+         */
+        public LatencyHistogram getLatencies()
+        {
+            return latencies;
+        }
+
+        /**
+         * @return latencies of the last complete {@link LiveMetrics#WINDOW_MS window}
+         */
+        public LatencyHistogram getWindowLatencies()
+        {
+            return lastWindowLatencies;
+        }
+
+        /**
+         * @param seconds               the number of complete seconds to look back over (up to a minute)
+         * @param errorsOnly            <tt>true</tt> to count only failed events
+         * @return                      the mean number of events per second
+         */
+        public double getRate(int seconds, boolean errorsOnly)
+        {
+            seconds = Math.max(1, Math.min(seconds, SECONDS_KEPT - 1));
+            long currentSecond = System.currentTimeMillis() / 1000L;
+            long total = 0L;
+            for (long second = currentSecond - seconds; second < currentSecond; second++)
+            {
+                int slot = (int) (second % SECONDS_KEPT);
+                if (secondStamps.get(slot) == second)
+                {
+                    total += errorsOnly ? secondErrors.get(slot) : secondCounts.get(slot);
+                }
+            }
+            return (double) total / seconds;
+        }
+    }
+}
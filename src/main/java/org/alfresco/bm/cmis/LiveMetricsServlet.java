@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Publishes the {@link LiveMetrics live metrics} of the driver in the Prometheus text format so that
+ * a run can be watched, and aborted early, while it is going.
+ * <p/>
+ * For each CMIS event name:
+ * <ul>
+ *   <li><tt>cmis_events_total</tt> and <tt>cmis_event_errors_total</tt>: counts since the start of the run</li>
+ *   <li><tt>cmis_events_per_second</tt> and <tt>cmis_event_errors_per_second</tt>: rates over the last second and the last 10 seconds</li>
+ *   <li><tt>cmis_event_latency_ms</tt>: percentiles over the last complete window and since the start of the run</li>
+ * </ul>
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class LiveMetricsServlet extends HttpServlet
+{
+    private static final long serialVersionUID = -4083621553240957120L;
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = new double[] {0.5, 0.9, 0.99, 0.999};
+    private static final int[] RATE_SECONDS = new int[] {1, 10};
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException
+    {
+        resp.setContentType(CONTENT_TYPE);
+        resp.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = resp.getWriter();
+        write(writer, LiveMetrics.get().getEventMetrics());
+        writer.flush();
+    }
+
+    /**
+     * Write the metrics of each event name in the Prometheus text format
+     */
+    static void write(PrintWriter writer, Map<String, LiveMetrics.EventMetrics> metricsByEventName)
+    {
+        writer.println("# TYPE cmis_events_total counter");
+        for (Map.Entry<String, LiveMetrics.EventMetrics> entry : metricsByEventName.entrySet())
+        {
+            writeSample(writer, "cmis_events_total", entry.getKey(), null, entry.getValue().getCount());
+        }
+        writer.println("# TYPE cmis_event_errors_total counter");
+        for (Map.Entry<String, LiveMetrics.EventMetrics> entry : metricsByEventName.entrySet())
+        {
+            writeSample(writer, "cmis_event_errors_total", entry.getKey(), null, entry.getValue().getErrors());
+        }
+        writer.println("# TYPE cmis_events_per_second gauge");
+        for (Map.Entry<String, LiveMetrics.EventMetrics> entry : metricsByEventName.entrySet())
+        {
+            for (int seconds : RATE_SECONDS)
+            {
+                writeSample(writer, "cmis_events_per_second", entry.getKey(), "window=\"" + seconds + "s\"", entry.getValue().getRate(seconds, false));
+            }
+        }
+        writer.println("# TYPE cmis_event_errors_per_second gauge");
+        for (Map.Entry<String, LiveMetrics.EventMetrics> entry : metricsByEventName.entrySet())
+        {
+            for (int seconds : RATE_SECONDS)
+            {
+                writeSample(writer, "cmis_event_errors_per_second", entry.getKey(), "window=\"" + seconds + "s\"", entry.getValue().getRate(seconds, true));
+            }
+        }
+        writer.println("# TYPE cmis_event_latency_ms gauge");
+        for (Map.Entry<String, LiveMetrics.EventMetrics> entry : metricsByEventName.entrySet())
+        {
+            LatencyHistogram window = entry.getValue().getWindowLatencies();
+            LatencyHistogram run = entry.getValue().getLatencies();
+            for (double quantile : QUANTILES)
+            {
+                String quantileLabel = "quantile=\"" + quantile + "\"";
+                writeSample(writer, "cmis_event_latency_ms", entry.getKey(), quantileLabel + ",window=\"" + (LiveMetrics.WINDOW_MS / 1000L) + "s\"", window.getValueAtPercentile(quantile * 100.0));
+                writeSample(writer, "cmis_event_latency_ms", entry.getKey(), quantileLabel + ",window=\"run\"", run.getValueAtPercentile(quantile * 100.0));
+            }
+        }
+    }
+
+    private static void writeSample(PrintWriter writer, String metric, String eventName, String labels, double value)
+    {
+        writer.print(metric);
+        writer.print("{event=\"");
+        writer.print(eventName.replace("\\", "\\\\").replace("\"", "\\\""));
+        writer.print('"');
+        if (labels != null)
+        {
+            writer.print(',');
+            writer.print(labels);
+        }
+        writer.print("} ");
+        writer.println(value == Math.rint(value) ? Long.toString((long) value) : String.format(Locale.ROOT, "%.3f", value));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Random;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * A MongoDB mirror of the folders and documents created in the repository by the test, like the mirror of
+ * the test users.
+ * <p/>
+ * Each object is recorded with a random number between 0 and 1, which is indexed along with the kind of
+ * object, so that an existing object can be chosen at random with a single indexed lookup instead of a
+ * query against the repository.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ObjectDataService
+{
+    public static final String FIELD_ID = "_id";
+    public static final String FIELD_KIND = "kind";
+    public static final String FIELD_OBJECT_TYPE_ID = "objectTypeId";
+    public static final String FIELD_NAME = "name";
+    public static final String FIELD_PATH = "path";
+    public static final String FIELD_PARENT_ID = "parentId";
+    public static final String FIELD_SIZE = "size";
+    public static final String FIELD_MIME_TYPE = "mimeType";
+    public static final String FIELD_CREATED = "created";
+    public static final String FIELD_RANDOM = "random";
+
+    /**
+     * The kinds of object that are mirrored
+     */
+    public enum ObjectKind
+    {
+        FOLDER,
+        DOCUMENT
+    }
+
+    private final DBCollection collection;
+    private final Random random;
+
+    /**
+     * @param db                    the database holding the mirror
+     * @param collection            the name of the mirror collection
+     */
+    public ObjectDataService(DB db, String collection)
+    {
+        this.collection = db.getCollection(collection);
+        this.random = new Random();
+
+        this.collection.ensureIndex(new BasicDBObject(FIELD_KIND, 1).append(FIELD_RANDOM, 1));
+        this.collection.ensureIndex(new BasicDBObject(FIELD_PATH, 1));
+    }
+
+    /**
+     * Record a new folder
+     */
+    public void addFolder(String id, String objectTypeId, String name, String path, String parentId)
+    {
+        addObject(ObjectKind.FOLDER, id, BasicDBObjectBuilder
+                .start()
+                .append(FIELD_OBJECT_TYPE_ID, objectTypeId)
+                .append(FIELD_NAME, name)
+                .append(FIELD_PATH, path)
+                .append(FIELD_PARENT_ID, parentId)
+                .get());
+    }
+
+    /**
+     * Record a new document
+     */
+    public void addDocument(String id, String objectTypeId, String name, String path, String parentId, long size, String mimeType)
+    {
+        addObject(ObjectKind.DOCUMENT, id, BasicDBObjectBuilder
+                .start()
+                .append(FIELD_OBJECT_TYPE_ID, objectTypeId)
+                .append(FIELD_NAME, name)
+                .append(FIELD_PATH, path)
+                .append(FIELD_PARENT_ID, parentId)
+                .append(FIELD_SIZE, size)
+                .append(FIELD_MIME_TYPE, mimeType)
+                .get());
+    }
+
+    private void addObject(ObjectKind kind, String id, DBObject details)
+    {
+        details.put(FIELD_KIND, kind.name());
+        details.put(FIELD_CREATED, System.currentTimeMillis());
+        details.put(FIELD_RANDOM, nextRandom());
+        // Recording the same object again just refreshes it
+        collection.update(new BasicDBObject(FIELD_ID, id), new BasicDBObject("$set", details), true, false);
+    }
+
+    private double nextRandom()
+    {
+        synchronized (random)
+        {
+            return random.nextDouble();
+        }
+    }
+
+    /**
+     * Choose an object of the given kind at random.  Objects are chosen with a probability proportional to
+     * the gap before their random number, which is close enough to uniform for choosing test data.
+     * 
+     * @param random                the source of random choices
+     * @return                      the object record or <tt>null</tt> if there are no objects of that kind
+     */
+    public DBObject getRandomObject(ObjectKind kind, Random random)
+    {
+        double value = random.nextDouble();
+        DBObject found = findFirst(
+                new BasicDBObject(FIELD_KIND, kind.name()).append(FIELD_RANDOM, new BasicDBObject("$gte", value)),
+                new BasicDBObject(FIELD_RANDOM, 1));
+        if (found == null)
+        {
+            // Wrap around
+            found = findFirst(
+                    new BasicDBObject(FIELD_KIND, kind.name()).append(FIELD_RANDOM, new BasicDBObject("$lt", value)),
+                    new BasicDBObject(FIELD_RANDOM, -1));
+        }
+        return found;
+    }
+
+    private DBObject findFirst(DBObject query, DBObject sort)
+    {
+        DBCursor cursor = collection.find(query).sort(sort).limit(1);
+        try
+        {
+            return cursor.hasNext() ? cursor.next() : null;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return                      the number of mirrored objects of the given kind
+     */
+    public long countObjects(ObjectKind kind)
+    {
+        return collection.count(new BasicDBObject(FIELD_KIND, kind.name()));
+    }
+
+    /**
+     * Forget an object that no longer exists
+     */
+    public void removeObject(String id)
+    {
+        collection.remove(new BasicDBObject(FIELD_ID, id));
+    }
+
+    /**
+     * Forget a deleted folder and everything that was below it
+     * 
+     * @return                      the number of objects forgotten
+     */
+    public int removeTree(String path)
+    {
+        BasicDBList paths = new BasicDBList();
+        paths.add(new BasicDBObject(FIELD_PATH, path));
+        paths.add(new BasicDBObject(FIELD_PATH, new BasicDBObject("$regex", "^" + escapeRegex(path.endsWith("/") ? path : path + "/"))));
+        return collection.remove(new BasicDBObject("$or", paths)).getN();
+    }
+
+    /**
+     * Escape a literal for use as a regular expression prefix, which keeps the path index usable
+     */
+    private static String escapeRegex(String literal)
+    {
+        StringBuilder sb = new StringBuilder(literal.length() + 8);
+        for (char c : literal.toCharArray())
+        {
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0)
+            {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+/**
+ * The ways in which an object with a known path can be retrieved
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public enum ObjectLookup
+{
+    /** Resolve the path on the server every time */
+    PATH,
+    /** Retrieve the object by an ID that is already known; resolving the ID is not timed */
+    ID,
+    /** Use the ID held in a {@link PathIdCache}, resolving the path only when the cache misses */
+    CACHE;
+
+    /**
+     * @return the number of segments in a path e.g. <tt>2</tt> for <tt>/Sites/site</tt>
+     */
+    public static int getPathDepth(String path)
+    {
+        int depth = 0;
+        for (String segment : path.split("/"))
+        {
+            if (segment.length() > 0)
+            {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
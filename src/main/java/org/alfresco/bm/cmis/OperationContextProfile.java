@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+
+/**
+ * A named {@link OperationContext} that can be given to individual event processors so that
+ * each step fetches only what it needs e.g. <tt>idOnly</tt> for lookups or <tt>fullDocument</tt>
+ * for property reads.  The name is recorded in the event results.
+ * <p/>
+ * Sessions taking part in a {@link StartCMISSession#setFilterExperiment(String) filter experiment}
+ * are given a {@link #newFilterVariant(OperationContext, String) filter variant} as their default
+ * context; the profile then uses the variant's property filter in place of its own so that the
+ * experiment reaches every call.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class OperationContextProfile
+{
+    private final String name;
+    private final OperationContext operationContext;
+    /** Copies of the operation context by the filter variant that replaces its filter */
+    private final ConcurrentMap<String, OperationContext> variantContexts;
+
+    /**
+     * @param name                  the name of the profile as recorded in results
+     * @param operationContext      the operation context for calls made with the profile
+     */
+    public OperationContextProfile(String name, OperationContext operationContext)
+    {
+        this.name = name;
+        this.operationContext = operationContext;
+        this.variantContexts = new ConcurrentHashMap<String, OperationContext>();
+    }
+
+    /**
+     * Copy an operation context, replacing its property filter for a filter experiment
+     * 
+     * @param ctx                   the operation context to copy
+     * @param filterVariant         the property filter of the session
+     * @return                      a copy of the context with the variant filter
+     */
+    public static OperationContext newFilterVariant(OperationContext ctx, String filterVariant)
+    {
+        return new FilterVariantContext(ctx, filterVariant);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public OperationContext getOperationContext()
+    {
+        return operationContext;
+    }
+
+    /**
+     * @param session               the session making the calls
+     * @return                      the operation context of the profile with the property filter
+     *                              of the session's {@link #newFilterVariant(OperationContext, String) filter variant},
+     *                              if it has one
+     */
+    public OperationContext getOperationContext(Session session)
+    {
+        OperationContext sessionCtx = session.getDefaultContext();
+        if (!(sessionCtx instanceof FilterVariantContext))
+        {
+            return operationContext;
+        }
+        String filterVariant = ((FilterVariantContext) sessionCtx).getFilterVariant();
+        OperationContext variantCtx = variantContexts.get(filterVariant);
+        if (variantCtx == null)
+        {
+            OperationContext newVariantCtx = newFilterVariant(operationContext, filterVariant);
+            variantCtx = variantContexts.putIfAbsent(filterVariant, newVariantCtx);
+            variantCtx = variantCtx == null ? newVariantCtx : variantCtx;
+        }
+        return variantCtx;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OperationContextProfile [name=" + name + ", operationContext=" + operationContext + "]";
+    }
+
+    /**
+     * The operation context of a session in a filter experiment
+     */
+    private static class FilterVariantContext extends OperationContextImpl
+    {
+        private static final long serialVersionUID = -2408551218512963467L;
+
+        private final String filterVariant;
+
+        private FilterVariantContext(OperationContext ctx, String filterVariant)
+        {
+            super(ctx);
+            this.filterVariant = filterVariant;
+            setFilterString(filterVariant);
+        }
+
+        public String getFilterVariant()
+        {
+            return filterVariant;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+
+/**
+ * A map of object paths to object IDs, shared by all sessions on a driver and kept separately
+ * for each repository.  Objects that have been deleted since their ID was cached are looked up
+ * by path again.
+ * <p/>
+ * The cache holds a limited number of paths and forgets the least recently used paths first, so
+ * that caching paths that are never looked up again does not use more and more memory.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class PathIdCache
+{
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final int maxSize;
+    private final Map<String, String> idsByPath;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    public PathIdCache()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize               the most paths to keep
+     */
+    @SuppressWarnings("serial")
+    public PathIdCache(int maxSize)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("The cache must hold at least one path.");
+        }
+        this.maxSize = maxSize;
+        this.idsByPath = new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                if (size() > PathIdCache.this.maxSize)
+                {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    private static String getKey(Session session, String path)
+    {
+        return session.getRepositoryInfo().getId() + ":" + path;
+    }
+
+    /**
+     * @return the cached ID of the object at the path or <tt>null</tt> if it is not known
+     */
+    public String getId(Session session, String path)
+    {
+        synchronized (idsByPath)
+        {
+            return idsByPath.get(getKey(session, path));
+        }
+    }
+
+    /**
+     * Record the ID of the object at the path
+     */
+    public void putId(Session session, String path, String id)
+    {
+        synchronized (idsByPath)
+        {
+            idsByPath.put(getKey(session, path), id);
+        }
+    }
+
+    /**
+     * Forget the ID of the object at the path e.g. when the object is deleted
+     */
+    public void removeId(Session session, String path)
+    {
+        synchronized (idsByPath)
+        {
+            idsByPath.remove(getKey(session, path));
+        }
+    }
+
+    /**
+     * Get the object at the given path using the cached ID, if there is one, or by resolving the path
+     * 
+     * @param ctx                   the operation context to use or <tt>null</tt> for the session default
+     * @return                      the object (never <tt>null</tt>)
+     * @throws CmisObjectNotFoundException if there is no object at the path
+     */
+    public CmisObject getObject(Session session, String path, OperationContext ctx)
+    {
+        if (ctx == null)
+        {
+            ctx = session.getDefaultContext();
+        }
+        String key = getKey(session, path);
+        String id;
+        synchronized (idsByPath)
+        {
+            id = idsByPath.get(key);
+        }
+        if (id != null)
+        {
+            try
+            {
+                CmisObject object = session.getObject(id, ctx);
+                hits.incrementAndGet();
+                return object;
+            }
+            catch (CmisObjectNotFoundException e)
+            {
+                // The object has gone; the path may now be something else
+                synchronized (idsByPath)
+                {
+                    if (id.equals(idsByPath.get(key)))
+                    {
+                        idsByPath.remove(key);
+                    }
+                }
+            }
+        }
+        misses.incrementAndGet();
+        CmisObject object = session.getObjectByPath(path, ctx);
+        synchronized (idsByPath)
+        {
+            idsByPath.put(key, object.getId());
+        }
+        return object;
+    }
+
+    /**
+     * @return the number of lookups that used a cached ID
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to resolve the path
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of paths forgotten to make room for others
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of paths cached
+     */
+    public int size()
+    {
+        synchronized (idsByPath)
+        {
+            return idsByPath.size();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PathIdCache [size=" + size() + ", maxSize=" + maxSize + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * Build one folder of the dataset
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing a session.
+ *
+ * <h1>Actions</h1>
+ *
+ * Claim the next folder of the {@link DatasetService dataset} to build, create it and any missing parent
+ * folders, and create its documents, starting after the last document recorded by an earlier build.
+ * Documents that already exist are left as they are but are still recorded in the mirror.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_POPULATE_FOLDER}: the {@link CMISEventData data object} to build the next folder<br/>
+ * or nothing when there are no folders left to claim<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class PopulateDatasetFolder extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_POPULATE_FOLDER = "cmis.dataset.populate";
+    public static final String MIME_TYPE = "image/gif";
+
+    private final DatasetService datasetService;
+    private final Map<String, String> documentProperties;
+    private String eventNamePopulateFolder;
+    private ObjectDataService objectDataService;
+
+    /**
+     * @param datasetService            the dataset and its progress
+     * @param documentProperties        comma-separated <tt>propertyId=value</tt> pairs set on every document
+     *                                  e.g. <tt>cmis:description=Benchmark data</tt> or empty for none
+     */
+    public PopulateDatasetFolder(DatasetService datasetService, String documentProperties)
+    {
+        super();
+        this.datasetService = datasetService;
+        this.documentProperties = new HashMap<String, String>();
+        if (documentProperties != null && !documentProperties.trim().isEmpty())
+        {
+            for (String property : documentProperties.trim().split("\\s*,\\s*"))
+            {
+                int equals = property.indexOf('=');
+                if (equals < 1)
+                {
+                    throw new IllegalArgumentException("Document properties must be of the form 'propertyId=value': " + property);
+                }
+                this.documentProperties.put(property.substring(0, equals).trim(), property.substring(equals + 1).trim());
+            }
+        }
+        this.eventNamePopulateFolder = EVENT_NAME_POPULATE_FOLDER;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_POPULATE_FOLDER default} event name used to build the next folder
+     */
+    public void setEventNamePopulateFolder(String eventNamePopulateFolder)
+    {
+        this.eventNamePopulateFolder = eventNamePopulateFolder;
+    }
+
+    /**
+     * Record the dataset folders and documents in a {@link ObjectDataService mirror} so that read scenarios
+     * can find them
+     * 
+     * @since 1.4
+     */
+    public void setObjectDataService(ObjectDataService objectDataService)
+    {
+        this.objectDataService = objectDataService;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to build dataset folder; no session provided.", false);
+        }
+        Session session = data.getSession();
+
+        DBObject folderRecord = datasetService.claim();
+        if (folderRecord == null)
+        {
+            return new EventResult("No dataset folders left to build.", true);
+        }
+        String id = (String) folderRecord.get(DatasetService.FIELD_ID);
+        int documents = ((Number) folderRecord.get(DatasetService.FIELD_DOCUMENTS)).intValue();
+        String path = datasetService.getFolderPath(id);
+
+        int created = 0;
+        int existing = 0;
+        long bytes = 0L;
+        super.resumeTimer();                                // Timer control
+        Folder folder = getOrCreateFolder(session, path);
+        super.suspendTimer();                               // Timer control
+        if (objectDataService != null)
+        {
+            objectDataService.addFolder(folder.getId(), folder.getType().getId(), folder.getName(), path, folder.getParentId());
+        }
+        super.resumeTimer();                                // Timer control
+        for (int i = documents; i < datasetService.getDocumentsPerFolder(); i++)
+        {
+            String name = datasetService.getDocumentName(id, i);
+            byte[] content = datasetService.getContent(id, i);
+            Map<String, Object> properties = new HashMap<String, Object>(documentProperties);
+            properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+            properties.put(PropertyIds.NAME, name);
+            ContentStream cs = new ContentStreamImpl(name, BigInteger.valueOf(content.length), MIME_TYPE, new ByteArrayInputStream(content));
+            Document document = null;
+            try
+            {
+                document = folder.createDocument(properties, cs, VersioningState.MAJOR);
+                created++;
+                bytes += content.length;
+            }
+            catch (CmisContentAlreadyExistsException e)
+            {
+                // Created before an interruption
+                existing++;
+            }
+            super.suspendTimer();                           // Timer control
+            if (objectDataService != null)
+            {
+                if (document == null)
+                {
+                    // It may not have been mirrored before the interruption
+                    document = (Document) session.getObjectByPath(path + "/" + name, getOperationContext(session));
+                }
+                objectDataService.addDocument(
+                        document.getId(), document.getType().getId(), name, path + "/" + name, folder.getId(),
+                        document.getContentStreamLength(), MIME_TYPE);
+            }
+            datasetService.progress(id, i + 1);
+            super.resumeTimer();                            // Timer control
+        }
+        super.stopTimer();                                  // Timer control
+        datasetService.done(id);
+
+        // Done
+        Event nextEvent = new Event(eventNamePopulateFolder, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully built dataset folder.")
+                    .append("path", path)
+                    .append("depth", folderRecord.get(DatasetService.FIELD_DEPTH))
+                    .append("created", created)
+                    .append("existing", existing)
+                    .append("resumedAt", documents)
+                    .append("bytes", bytes)
+                    .get(),
+                nextEvent);
+
+        // Done
+        return result;
+    }
+
+    /**
+     * Get a folder, creating it and its parents if necessary.  Other sessions may be creating the same folders.
+     */
+    private Folder getOrCreateFolder(Session session, String path)
+    {
+        try
+        {
+            CmisObject object = session.getObjectByPath(path, getOperationContext(session));
+            if (object instanceof Folder)
+            {
+                return (Folder) object;
+            }
+            throw new IllegalStateException("Dataset folder path is not a folder: " + path);
+        }
+        catch (CmisObjectNotFoundException e)
+        {
+            // Create it below
+        }
+        int slash = path.lastIndexOf('/');
+        Folder parent = getOrCreateFolder(session, slash == 0 ? "/" : path.substring(0, slash));
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+        properties.put(PropertyIds.NAME, path.substring(slash + 1));
+        try
+        {
+            return parent.createFolder(properties);
+        }
+        catch (CmisContentAlreadyExistsException e)
+        {
+            // Another session got there first
+            return (Folder) session.getObjectByPath(path, getOperationContext(session));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.alfresco.bm.user.UserData;
+import org.alfresco.bm.user.UserDataService;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * Build the dataset needed by read scenarios, or wait for it to be built, before the load starts
+ *
+ * <h1>Input</h1>
+ *
+ * <tt>null</tt> to start building or a progress check from an earlier event.
+ *
+ * <h1>Actions</h1>
+ *
+ * Record the folders of the {@link DatasetService dataset} that are still to be built and start the given
+ * number of CMIS sessions to build them in parallel.  The build resumes where an earlier, interrupted build
+ * stopped.  Progress is then checked regularly; if nothing has moved for a while, abandoned folders are made
+ * available again and new sessions are started.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_START_SESSION}: a session start event for each building session<br/>
+ * {@link #EVENT_NAME_PREPARE_DATASET}: a later progress check<br/>
+ * or {@link #EVENT_NAME_DATASET_READY} when the dataset is complete or not required<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class PrepareDataset extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_PREPARE_DATASET = "cmis.prepareDataset";
+    public static final String EVENT_NAME_START_SESSION = "cmis.dataset.startSession";
+    public static final String EVENT_NAME_DATASET_READY = "cmis.datasetReady";
+    public static final long DEFAULT_CHECK_DELAY = 10000L;
+    public static final long DEFAULT_STALL_TIME = 300000L;
+
+    private final DatasetService datasetService;
+    private final UserDataService userDataService;
+    private final boolean enabled;
+    private final int sessionCount;
+    private long checkDelay;
+    private long stallTime;
+    private String eventNamePrepareDataset;
+    private String eventNameStartSession;
+    private String eventNameDatasetReady;
+
+    /**
+     * @param datasetService            the dataset and its progress
+     * @param userDataService           service to choose the users of the building sessions
+     * @param enabled                   <tt>false</tt> to go straight on without a dataset
+     * @param sessionCount              the number of sessions building the dataset in parallel
+     */
+    public PrepareDataset(DatasetService datasetService, UserDataService userDataService, boolean enabled, int sessionCount)
+    {
+        super();
+        this.datasetService = datasetService;
+        this.userDataService = userDataService;
+        this.enabled = enabled;
+        this.sessionCount = sessionCount;
+        this.checkDelay = DEFAULT_CHECK_DELAY;
+        this.stallTime = DEFAULT_STALL_TIME;
+        this.eventNamePrepareDataset = EVENT_NAME_PREPARE_DATASET;
+        this.eventNameStartSession = EVENT_NAME_START_SESSION;
+        this.eventNameDatasetReady = EVENT_NAME_DATASET_READY;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_CHECK_DELAY default} time (ms) between progress checks
+     */
+    public void setCheckDelay(long checkDelay)
+    {
+        this.checkDelay = checkDelay;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_STALL_TIME default} time (ms) without progress after which the build is restarted
+     */
+    public void setStallTime(long stallTime)
+    {
+        this.stallTime = stallTime;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_PREPARE_DATASET default} event name for progress checks
+     */
+    public void setEventNamePrepareDataset(String eventNamePrepareDataset)
+    {
+        this.eventNamePrepareDataset = eventNamePrepareDataset;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_START_SESSION default} event name used to start the building sessions
+     */
+    public void setEventNameStartSession(String eventNameStartSession)
+    {
+        this.eventNameStartSession = eventNameStartSession;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_DATASET_READY default} event name for 'dataset ready'
+     */
+    public void setEventNameDatasetReady(String eventNameDatasetReady)
+    {
+        this.eventNameDatasetReady = eventNameDatasetReady;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        if (!enabled)
+        {
+            return new EventResult("No dataset required.", new Event(eventNameDatasetReady, null));
+        }
+
+        long now = System.currentTimeMillis();
+        DBObject checkData = (DBObject) event.getData();
+        boolean check = checkData != null;
+        long started = check ? ((Number) checkData.get("started")).longValue() : now;
+        long lastUpdated = check ? datasetService.getLastUpdated() : 0L;
+        // Nothing recorded for too long since the sessions were started
+        boolean stalled = check && now - Math.max(lastUpdated, started) > stallTime;
+
+        super.resumeTimer();                                // Timer control
+        long remaining = (check && !stalled) ? datasetService.countRemaining() : datasetService.plan();
+        super.stopTimer();                                  // Timer control
+
+        if (remaining == 0L)
+        {
+            Event readyEvent = new Event(eventNameDatasetReady, null);
+            return new EventResult(
+                    BasicDBObjectBuilder
+                        .start()
+                        .append("msg", "Dataset is ready.")
+                        .append("remainingFolders", remaining)
+                        .get(),
+                    readyEvent);
+        }
+
+        List<Event> nextEvents = new ArrayList<Event>(sessionCount + 1);
+        if (!check || stalled)
+        {
+            // (Re)start the sessions that build the dataset
+            for (int i = 0; i < sessionCount; i++)
+            {
+                UserData user = userDataService.getRandomUser();
+                if (user == null)
+                {
+                    return new EventResult("Unable to build dataset: no users available.", false);
+                }
+                nextEvents.add(new Event(eventNameStartSession, now, user.getUsername()));
+            }
+            started = now;
+        }
+        DBObject nextCheckData = BasicDBObjectBuilder
+                .start()
+                .append("started", started)
+                .get();
+        nextEvents.add(new Event(eventNamePrepareDataset, now + checkDelay, nextCheckData));
+
+        // Done
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", check ? (stalled ? "Dataset build stalled; restarted." : "Dataset build in progress.") : "Dataset build started.")
+                    .append("remainingFolders", remaining)
+                    .append("sessionCount", (!check || stalled) ? sessionCount : 0)
+                    .append("lastUpdated", lastUpdated)
+                    .get(),
+                nextEvents);
+
+        // Done
+        return result;
+    }
+}
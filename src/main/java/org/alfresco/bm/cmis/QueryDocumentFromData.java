@@ -79,7 +79,7 @@ public class QueryDocumentFromData extends AbstractCMISEventProcessor
         super.resumeTimer();
 
         // execute query
-        ItemIterable<QueryResult> results = session.query(query, false);
+        ItemIterable<QueryResult> results = session.query(query, false, getOperationContext(session));
         Iterator<QueryResult> it = results.iterator();
 
         while (it.hasNext())
@@ -114,11 +114,11 @@ public class QueryDocuments extends AbstractQueryCMISEventProcessor
         long docCount = 0;
 
         // execute query
-        ItemIterable<QueryResult> results = session.query(query, false);
+        ItemIterable<QueryResult> results = session.query(query, false, getOperationContext(session));
         Iterator<QueryResult> it = results.iterator();
 
         // Random chose a document from query
-        Random random = new Random();
+        Random random = data.getRandom();
         long resultCount = results.getTotalNumItems();
         int chose = 0;
         if (resultCount > 0) 
@@ -147,7 +147,7 @@ public class QueryDocuments extends AbstractQueryCMISEventProcessor
             Document doc = null;
             try
             {
-                doc = (Document) session.getObject(session.createObjectId(objectId));
+                doc = (Document) session.getObject(session.createObjectId(objectId), getOperationContext(session));
             }
             catch (Exception e)
             {
@@ -203,7 +203,7 @@ public class QueryDocuments extends AbstractQueryCMISEventProcessor
         String[] queryStrings = super.getQueryStrings(RESSOURCE_QUERY_FILENAME, logger);
 
         // random select next query
-        String query = super.getRandomSearchString(queryStrings);
+        String query = super.getRandomSearchString(queryStrings, data_p.getRandom());
         checkStringArgument("query", query);
         if (!query.startsWith("SELECT "))
         {
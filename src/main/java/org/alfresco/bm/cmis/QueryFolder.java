@@ -93,7 +93,7 @@ public class QueryFolder extends AbstractQueryCMISEventProcessor
         Folder folder = null;
 
         // execute query
-        ItemIterable<QueryResult> results = session.query(query, false);
+        ItemIterable<QueryResult> results = session.query(query, false, getOperationContext(session));
         Iterator<QueryResult> it = results.iterator();
 
         // this will not work because the search returns objects not accessible
@@ -114,7 +114,7 @@ public class QueryFolder extends AbstractQueryCMISEventProcessor
             String objectId = queryResult.getPropertyValueByQueryName(this.objectIdQueryName);
             try
             {
-                folder = (Folder) session.getObject(session.createObjectId(objectId));
+                folder = (Folder) session.getObject(session.createObjectId(objectId), getOperationContext(session));
                 if (null != folder)
                 {
                     data.getBreadcrumb().add(folder);
@@ -167,7 +167,7 @@ public class QueryFolder extends AbstractQueryCMISEventProcessor
         String[] queryStrings = super.getQueryStrings(RESSOURCE_QUERY_FILENAME, logger);
 
         // random select next query
-        String query = super.getRandomSearchString(queryStrings);
+        String query = super.getRandomSearchString(queryStrings, data_p.getRandom());
         checkStringArgument("query", query);
         if (!query.startsWith("SELECT "))
         {
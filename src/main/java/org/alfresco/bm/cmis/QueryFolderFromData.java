@@ -81,7 +81,7 @@ public class QueryFolderFromData extends AbstractCMISEventProcessor
         super.resumeTimer();
 
         // execute query
-        ItemIterable<QueryResult> results = session.query(query, false);
+        ItemIterable<QueryResult> results = session.query(query, false, getOperationContext(session));
         Iterator<QueryResult> it = results.iterator();
 
         while (it.hasNext())
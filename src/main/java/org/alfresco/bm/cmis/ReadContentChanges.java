@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.ChangeEvents;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Read the content changes made since the last read, as an incremental sync client would
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing a session and, optionally, the
+ * {@link CMISEventData#getChangeLogToken() change log token} left by a previous read.
+ *
+ * <h1>Actions</h1>
+ *
+ * Page through the change log from the stored token (or from the repository's latest token when
+ * the session was started) and keep the new token.  The lag between each change being made and
+ * being read is measured using the change time reported by the server.  The read is repeated a
+ * given number of times, with a delay between reads, before moving on.
+ *
+ * <h1>Output</h1>
+ *
+ * This event again, after the {@link #setPollDelay(long) poll delay}, until it has been
+ * {@link #setPollCount(int) repeated} enough times<br/>
+ * {@link #EVENT_NAME_CONTENT_CHANGES_READ}: The {@link CMISEventData data object} with the new token<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ReadContentChanges extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_CONTENT_CHANGES_READ = "cmis.contentChangesRead";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_POLL_COUNT = 1;
+    public static final long DEFAULT_POLL_DELAY = 1000L;
+
+    private int pageSize;
+    private int pollCount;
+    private long pollDelay;
+    private boolean includeProperties;
+    private String eventNameContentChangesRead;
+
+    /**
+     */
+    public ReadContentChanges()
+    {
+        super();
+        this.pageSize = DEFAULT_PAGE_SIZE;
+        this.pollCount = DEFAULT_POLL_COUNT;
+        this.pollDelay = DEFAULT_POLL_DELAY;
+        this.includeProperties = false;
+        this.eventNameContentChangesRead = EVENT_NAME_CONTENT_CHANGES_READ;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_CONTENT_CHANGES_READ default} event name for 'content changes read'.
+     */
+    public void setEventNameContentChangesRead(String eventNameContentChangesRead)
+    {
+        this.eventNameContentChangesRead = eventNameContentChangesRead;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_PAGE_SIZE default} maximum number of changes read per call
+     */
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_POLL_COUNT default} number of times the change log is read
+     */
+    public void setPollCount(int pollCount)
+    {
+        this.pollCount = pollCount;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_POLL_DELAY default} delay (ms) between reads of the change log
+     */
+    public void setPollDelay(long pollDelay)
+    {
+        this.pollDelay = pollDelay;
+    }
+
+    /**
+     * @param includeProperties     <tt>true</tt> to have the changed properties returned with each change
+     */
+    public void setIncludeProperties(boolean includeProperties)
+    {
+        this.includeProperties = includeProperties;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to read content changes; no session provided.", false);
+        }
+        Session session = data.getSession();
+        RepositoryInfo repositoryInfo = session.getRepositoryInfo();
+        CapabilityChanges changesCapability = repositoryInfo.getCapabilities().getChangesCapability();
+        if (changesCapability == null || changesCapability == CapabilityChanges.NONE)
+        {
+            return new EventResult("Unable to read content changes; the repository does not have a change log.", false);
+        }
+        String startToken = data.getChangeLogToken();
+        if (startToken == null)
+        {
+            startToken = repositoryInfo.getLatestChangeLogToken();
+        }
+
+        String token = startToken;
+        int pages = 0;
+        long changes = 0L;
+        long totalLag = 0L;
+        long maxLag = 0L;
+        long start = System.currentTimeMillis();
+        super.resumeTimer();                                // Timer control
+        while (true)
+        {
+            ChangeEvents changeEvents = session.getContentChanges(token, includeProperties, pageSize);
+            long readTime = System.currentTimeMillis();
+            pages++;
+            for (ChangeEvent changeEvent : changeEvents.getChangeEvents())
+            {
+                changes++;
+                if (changeEvent.getChangeTime() != null)
+                {
+                    long lag = Math.max(0L, readTime - changeEvent.getChangeTime().getTimeInMillis());
+                    totalLag += lag;
+                    maxLag = Math.max(maxLag, lag);
+                }
+            }
+            if (changeEvents.getLatestChangeLogToken() != null)
+            {
+                token = changeEvents.getLatestChangeLogToken();
+            }
+            if (!changeEvents.getHasMoreItems() || changeEvents.getChangeEvents().isEmpty())
+            {
+                break;
+            }
+        }
+        super.stopTimer();                                  // Timer control
+        long elapsed = System.currentTimeMillis() - start;
+
+        // Keep the token for the next read
+        int polls = data.getChangeLogPolls() + 1;
+        data.setChangeLogToken(token);
+
+        Event nextEvent;
+        if (polls < pollCount)
+        {
+            data.setChangeLogPolls(polls);
+            nextEvent = new Event(event.getName(), System.currentTimeMillis() + pollDelay, data);
+        }
+        else
+        {
+            data.setChangeLogPolls(0);
+            nextEvent = new Event(eventNameContentChangesRead, data);
+        }
+
+        // Done
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully read content changes.")
+                    .push("changes")
+                        .append("capability", changesCapability.value())
+                        .append("startToken", startToken)
+                        .append("endToken", token)
+                        .append("poll", polls)
+                        .append("pages", pages)
+                        .append("changes", changes)
+                        .append("changesPerSec", elapsed == 0L ? 0.0 : changes * 1000.0 / elapsed)
+                        .append("avgLag", changes == 0L ? 0L : totalLag / changes)
+                        .append("maxLag", maxLag)
+                    .pop()
+                    .get(),
+                nextEvent);
+
+        // Done
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.Acl;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Read the ACLs of a folder tree
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing the root folder of the tree and the
+ * {@link CMISEventData#getObjectIds() IDs} of the folders in it.
+ *
+ * <h1>Actions</h1>
+ *
+ * Retrieve the ACL of the root folder and of every folder in the tree, one after the other
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_ACLS_READ}: The {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ReadFolderTreeAcls extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_ACLS_READ = "cmis.aclsRead";
+
+    private boolean onlyBasicPermissions;
+    private String eventNameAclsRead;
+
+    /**
+     */
+    public ReadFolderTreeAcls()
+    {
+        super();
+        this.onlyBasicPermissions = false;
+        this.eventNameAclsRead = EVENT_NAME_ACLS_READ;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_ACLS_READ default} event name for 'ACLs read'.
+     */
+    public void setEventNameAclsRead(String eventNameAclsRead)
+    {
+        this.eventNameAclsRead = eventNameAclsRead;
+    }
+
+    /**
+     * @param onlyBasicPermissions  <tt>true</tt> to have the repository map its permissions to the CMIS basic
+     *                              permissions (default: <tt>false</tt>)
+     */
+    public void setOnlyBasicPermissions(boolean onlyBasicPermissions)
+    {
+        this.onlyBasicPermissions = onlyBasicPermissions;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to read ACLs; no session provided.", false);
+        }
+        if (data.getBreadcrumb().isEmpty())
+        {
+            return new EventResult("Unable to read ACLs; no folder provided.", false);
+        }
+        Folder folder = data.getBreadcrumb().getLast();
+        Session session = data.getSession();
+
+        List<String> folderIds = new ArrayList<String>(data.getObjectIds().size() + 1);
+        folderIds.add(folder.getId());
+        folderIds.addAll(data.getObjectIds());
+
+        long aceCount = 0L;
+        long totalTime = 0L;
+        long maxTime = 0L;
+        super.resumeTimer();                                // Timer control
+        for (String folderId : folderIds)
+        {
+            long start = System.currentTimeMillis();
+            Acl acl = session.getAcl(session.createObjectId(folderId), onlyBasicPermissions);
+            long time = System.currentTimeMillis() - start;
+            if (acl != null && acl.getAces() != null)
+            {
+                aceCount += acl.getAces().size();
+            }
+            totalTime += time;
+            maxTime = Math.max(maxTime, time);
+        }
+        super.stopTimer();                                  // Timer control
+
+        // Done
+        Event doneEvent = new Event(eventNameAclsRead, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully read folder tree ACLs.")
+                    .push("folder")
+                        .append("id", folder.getId())
+                        .append("name", folder.getName())
+                    .pop()
+                    .push("acls")
+                        .append("onlyBasicPermissions", onlyBasicPermissions)
+                        .append("folders", folderIds.size())
+                        .append("aces", aceCount)
+                        .append("avgTime", totalTime / folderIds.size())
+                        .append("maxTime", maxTime)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
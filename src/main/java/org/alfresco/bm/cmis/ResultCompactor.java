@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.mongodb.DBObject;
+
+/**
+ * Reduces the size of the result data stored for CMIS events, which lightens each result write.
+ * The framework still writes one result per event; this does not reduce the number of writes.
+ * <p/>
+ * A sample of the results keeps all its details.  The others keep only their numbers and flags, and the
+ * {@link #setKeepFields(String) fields} that results are grouped by, such as the operation context profile
+ * and the session tags: messages, names, IDs and lists are dropped and nested objects are reduced in the
+ * same way.  The event name, time and success of every result are stored by the framework regardless.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ResultCompactor
+{
+    public static final double DEFAULT_SUCCESS_SAMPLE_PERCENT = 1.0;
+    public static final double DEFAULT_FAILURE_SAMPLE_PERCENT = 100.0;
+    public static final String DEFAULT_KEEP_FIELDS = "ctxProfile,sessionTags,scenario,lookup,binding,mode,retry,cmisFault.code";
+
+    private final boolean enabled;
+    private double successSamplePercent;
+    private double failureSamplePercent;
+    private Set<String> keepFields;
+
+    /**
+     * @param enabled               <tt>true</tt> to compact results or <tt>false</tt> to keep all details
+     */
+    public ResultCompactor(boolean enabled)
+    {
+        this.enabled = enabled;
+        this.successSamplePercent = DEFAULT_SUCCESS_SAMPLE_PERCENT;
+        this.failureSamplePercent = DEFAULT_FAILURE_SAMPLE_PERCENT;
+        setKeepFields(DEFAULT_KEEP_FIELDS);
+    }
+
+    /**
+     * Override the {@link #DEFAULT_SUCCESS_SAMPLE_PERCENT default} percentage of successful results kept in full
+     */
+    public void setSuccessSamplePercent(double successSamplePercent)
+    {
+        this.successSamplePercent = successSamplePercent;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_FAILURE_SAMPLE_PERCENT default} percentage of failed results kept in full
+     */
+    public void setFailureSamplePercent(double failureSamplePercent)
+    {
+        this.failureSamplePercent = failureSamplePercent;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_KEEP_FIELDS default} fields kept in every result, whatever their values.
+     * 
+     * @param keepFields            comma-separated field names, with nested fields given by their path
+     *                              e.g. <tt>cmisFault.code</tt>
+     */
+    public void setKeepFields(String keepFields)
+    {
+        this.keepFields = new HashSet<String>();
+        if (keepFields != null && !keepFields.trim().isEmpty())
+        {
+            this.keepFields.addAll(Arrays.asList(keepFields.trim().split("\\s*,\\s*")));
+        }
+    }
+
+    /**
+     * Compact the result data, unless it is sampled
+     * 
+     * @param data                  the result data, which is changed directly
+     * @param success               <tt>true</tt> if the event succeeded
+     */
+    public void compact(DBObject data, boolean success)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        double samplePercent = success ? successSamplePercent : failureSamplePercent;
+        if (samplePercent >= 100.0 || (samplePercent > 0.0 && ThreadLocalRandom.current().nextDouble() * 100.0 < samplePercent))
+        {
+            data.put("sampled", Boolean.TRUE);
+            return;
+        }
+        compactObject(data, "");
+    }
+
+    /**
+     * @param path                  the path of the object in the result e.g. <tt>cmisFault.</tt> or empty
+     * @return                      <tt>true</tt> if anything is left
+     */
+    private boolean compactObject(DBObject data, String path)
+    {
+        for (String key : new ArrayList<String>(data.keySet()))
+        {
+            Object value = data.get(key);
+            if (value instanceof Number || value instanceof Boolean || keepFields.contains(path + key))
+            {
+                continue;
+            }
+            if (value instanceof DBObject && !(value instanceof List) && compactObject((DBObject) value, path + key + "."))
+            {
+                continue;
+            }
+            data.removeField(key);
+        }
+        return !data.keySet().isEmpty();
+    }
+}
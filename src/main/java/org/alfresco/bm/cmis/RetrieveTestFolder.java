@@ -18,11 +18,19 @@
  */
 package org.alfresco.bm.cmis;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.alfresco.bm.event.Event;
 import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
 import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
 import org.apache.chemistry.opencmis.client.api.Session;
 import org.apache.chemistry.opencmis.client.util.FileUtils;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
 
 import com.mongodb.BasicDBObjectBuilder;
 
@@ -35,7 +43,9 @@ import com.mongodb.BasicDBObjectBuilder;
  * 
  * <h1>Actions</h1>
  * 
- * Retrieve a test folder by path and push it into the event data
+ * Retrieve a test folder using the configured {@link ObjectLookup lookup} and push it into the event data.
+ * By default, the folder ID is cached for each repository and the folder is retrieved by ID with only
+ * the properties needed to work in it; the path is resolved again only when the ID is not cached.
  * 
  * <h1>Output</h1>
  * 
@@ -48,9 +58,24 @@ public class RetrieveTestFolder extends AbstractCMISEventProcessor
 {
     public static final String REPOSITORY_ID_USE_FIRST = "---";
     public static final String EVENT_NAME_TEST_FOLDER_RETRIEVED = "cmis.testFolderRetrieved";
+
+    /** The properties needed to work with the test folder */
+    private static final Set<String> MINIMAL_FILTER = new HashSet<String>();
+    static
+    {
+        MINIMAL_FILTER.add(PropertyIds.OBJECT_ID);
+        MINIMAL_FILTER.add(PropertyIds.OBJECT_TYPE_ID);
+        MINIMAL_FILTER.add(PropertyIds.BASE_TYPE_ID);
+        MINIMAL_FILTER.add(PropertyIds.NAME);
+        MINIMAL_FILTER.add(PropertyIds.PATH);
+        MINIMAL_FILTER.add(PropertyIds.PARENT_ID);
+    }
     
     private final String path;
     private String eventNameTestFolderRetrieved;
+    private ObjectLookup lookup;
+    private PathIdCache pathIdCache;
+    private boolean timePathResolution;
 
     /**
      * @param path                  the path (starts with '/') to the test folder from the root
@@ -60,6 +85,9 @@ public class RetrieveTestFolder extends AbstractCMISEventProcessor
         super();
         this.path = path;
         this.eventNameTestFolderRetrieved = EVENT_NAME_TEST_FOLDER_RETRIEVED;
+        this.lookup = ObjectLookup.CACHE;
+        this.pathIdCache = new PathIdCache();
+        this.timePathResolution = false;
     }
 
     /**
@@ -70,6 +98,48 @@ public class RetrieveTestFolder extends AbstractCMISEventProcessor
         this.eventNameTestFolderRetrieved = eventNameTestFolderRetrieved;
     }
 
+    /**
+     * Override the default {@link ObjectLookup#CACHE cached} lookup of the test folder
+     * 
+     * @since 1.4
+     */
+    public void setLookup(ObjectLookup lookup)
+    {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Share a cache of folder IDs for the {@link ObjectLookup#ID ID} and {@link ObjectLookup#CACHE cached} lookups
+     * 
+     * @since 1.4
+     */
+    public void setPathIdCache(PathIdCache pathIdCache)
+    {
+        this.pathIdCache = pathIdCache;
+    }
+
+    /**
+     * @param timePathResolution    <tt>true</tt> to include resolving the path in the event time when the
+     *                              {@link ObjectLookup#CACHE cache} misses (default: <tt>false</tt>)
+     * 
+     * @since 1.4
+     */
+    public void setTimePathResolution(boolean timePathResolution)
+    {
+        this.timePathResolution = timePathResolution;
+    }
+
+    /**
+     * @return an operation context that fetches only the properties needed to work in the test folder
+     */
+    private static OperationContext getMinimalContext(Session session)
+    {
+        return session.createOperationContext(
+                MINIMAL_FILTER, false, false, false,
+                IncludeRelationships.NONE, Collections.singleton("cmis:none"),
+                false, null, true, 1);
+    }
+
     @Override
     protected EventResult processCMISEvent(Event event) throws Exception
     {
@@ -85,13 +155,34 @@ public class RetrieveTestFolder extends AbstractCMISEventProcessor
         // Get the session
         Session session = data.getSession();
         
-        super.resumeTimer();                                // Timer control
-        Folder folder = FileUtils.getFolder(path, session);
-        super.stopTimer();                                  // Timer control
-        if (folder == null)
+        boolean cacheHit = lookup != ObjectLookup.PATH && pathIdCache.getId(session, path) != null;
+        CmisObject folderObj;
+        switch (lookup)
+        {
+            case ID:
+            case CACHE:
+                OperationContext ctx = getOperationContextProfile() == null ? getMinimalContext(session) : getOperationContext(session);
+                if (!cacheHit && (lookup == ObjectLookup.ID || !timePathResolution))
+                {
+                    // Resolve the path outside of the timer
+                    pathIdCache.getObject(session, path, ctx);
+                }
+                super.resumeTimer();                        // Timer control
+                folderObj = pathIdCache.getObject(session, path, ctx);
+                super.stopTimer();                          // Timer control
+                break;
+            default:
+                super.resumeTimer();                        // Timer control
+                folderObj = FileUtils.getFolder(path, session);
+                super.stopTimer();                          // Timer control
+        }
+        String ctxProfile = getOperationContextProfile() != null ? getOperationContextProfile().getName()
+                : (lookup == ObjectLookup.PATH ? CTX_PROFILE_DEFAULT : "minimal");
+        if (!(folderObj instanceof Folder))
         {
             return new EventResult("Failed to find test folder at path " + path, false);
         }
+        Folder folder = (Folder) folderObj;
         
         // Store the folder
         data = new CMISEventData(data);
@@ -104,8 +195,13 @@ public class RetrieveTestFolder extends AbstractCMISEventProcessor
                 BasicDBObjectBuilder
                     .start()
                     .append("msg", "Successfully retrieved test folder.")
+                    .append("lookup", lookup.name())
+                    .append("pathDepth", ObjectLookup.getPathDepth(path))
+                    .append("cacheHit", cacheHit)
+                    .append("timePathResolution", timePathResolution)
+                    .append("ctxProfile", ctxProfile)
                     .push("folder")
-                        .append("id", folder.getPath())
+                        .append("path", path)
                         .append("id", folder.getId())
                         .append("name", folder.getName())
                     .pop()
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.alfresco.bm.user.UserData;
+import org.alfresco.bm.user.UserDataService;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * One step of a search for the highest session arrival rate that the system can sustain
+ *
+ * <h1>Input</h1>
+ *
+ * The state of the search: <tt>null</tt> for the first step or the data of the previous step.
+ *
+ * <h1>Actions</h1>
+ *
+ * Check the step that has just finished against the service level objectives: the p99 of the measured
+ * end-to-end {@link ScenarioLatencyRecorder scenario latency} and the error rate of the scenario events,
+ * for each scenario.  The throughput is the number of scenarios completed successfully in the step.
+ * While the objectives are met, the next step raises the arrival rate by a fixed increment.  On the first
+ * breach, the search backs off to the last sustainable rate for one confirmation step and then stops,
+ * reporting the maximum sustainable rate and the throughput of each scenario at that rate.
+ * <p/>
+ * Each step raises the session start events for its duration, spaced evenly at the step's rate.
+ * The measurements are those of this driver.  A snapshot of them is carried with the next step; if that
+ * step runs on another driver, or after a restart, the measurements cannot be compared, so the rate is run
+ * again instead of being passed unchecked.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_START_SESSION}: a session start event for each session of the step<br/>
+ * {@link #EVENT_NAME_SATURATION_STEP}: the next step, at the end of this one, unless the search is over<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class SaturationSearch extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_SATURATION_STEP = "cmis.saturationStep";
+    public static final String EVENT_NAME_START_SESSION = "cmis.startSession";
+    public static final long DEFAULT_SLO_P99 = 5000L;
+    public static final double DEFAULT_SLO_ERROR_PERCENT = 1.0;
+
+    private static final String SCENARIO_EVENT_PREFIX = "cmis.scenario.";
+    private static final String PHASE_SEARCH = "search";
+    private static final String PHASE_CONFIRM = "confirm";
+    /** Identifies this driver process, so that snapshots taken elsewhere or before a restart are not compared */
+    private static final String DRIVER_ID;
+    static
+    {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        DRIVER_ID = runtime.getName() + "/" + runtime.getStartTime();
+    }
+
+    private final UserDataService userDataService;
+    private final ScenarioLatencyRecorder scenarioLatencyRecorder;
+    private final double initialRate;
+    private final double rateIncrement;
+    private final long stepDuration;
+    private final int maxSteps;
+    private long sloP99;
+    private double sloErrorPercent;
+    private String eventNameSaturationStep;
+    private String eventNameStartSession;
+
+    /**
+     * @param userDataService           service to choose the users of new sessions
+     * @param scenarioLatencyRecorder   the source of the end-to-end scenario latencies
+     * @param initialRate               the session arrival rate (sessions per second) of the first step
+     * @param rateIncrement             the increase in the arrival rate from one step to the next
+     * @param stepDuration              the duration (ms) of each step
+     * @param maxSteps                  the number of steps after which the search stops
+     */
+    public SaturationSearch(
+            UserDataService userDataService, ScenarioLatencyRecorder scenarioLatencyRecorder,
+            double initialRate, double rateIncrement, long stepDuration, int maxSteps)
+    {
+        super();
+        if (initialRate <= 0.0 || rateIncrement <= 0.0)
+        {
+            throw new IllegalArgumentException("The saturation search rates must be positive.");
+        }
+        if (stepDuration < 1000L || maxSteps < 1)
+        {
+            throw new IllegalArgumentException("Saturation search steps must last at least a second and there must be at least one.");
+        }
+        this.userDataService = userDataService;
+        this.scenarioLatencyRecorder = scenarioLatencyRecorder;
+        this.initialRate = initialRate;
+        this.rateIncrement = rateIncrement;
+        this.stepDuration = stepDuration;
+        this.maxSteps = maxSteps;
+        this.sloP99 = DEFAULT_SLO_P99;
+        this.sloErrorPercent = DEFAULT_SLO_ERROR_PERCENT;
+        this.eventNameSaturationStep = EVENT_NAME_SATURATION_STEP;
+        this.eventNameStartSession = EVENT_NAME_START_SESSION;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_SLO_P99 default} highest acceptable p99 (ms) of the scenario latency
+     */
+    public void setSloP99(long sloP99)
+    {
+        this.sloP99 = sloP99;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_SLO_ERROR_PERCENT default} highest acceptable percentage of failed scenario events
+     */
+    public void setSloErrorPercent(double sloErrorPercent)
+    {
+        this.sloErrorPercent = sloErrorPercent;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_SATURATION_STEP default} event name for the next step
+     */
+    public void setEventNameSaturationStep(String eventNameSaturationStep)
+    {
+        this.eventNameSaturationStep = eventNameSaturationStep;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_START_SESSION default} event name used to start sessions
+     */
+    public void setEventNameStartSession(String eventNameStartSession)
+    {
+        this.eventNameStartSession = eventNameStartSession;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.stopTimer();                                  // Timer control
+
+        DBObject state = (DBObject) event.getData();
+        int step = state == null ? 0 : (Integer) state.get("step");
+        String phase = state == null ? PHASE_SEARCH : (String) state.get("phase");
+        double lastGoodRate = state == null ? 0.0 : (Double) state.get("lastGoodRate");
+        DBObject lastGoodThroughput = state == null ? new BasicDBObject() : (DBObject) state.get("lastGoodThroughput");
+
+        long now = System.currentTimeMillis();
+        DBObject snapshot = takeSnapshot(now);
+
+        BasicDBObjectBuilder resultBuilder = BasicDBObjectBuilder
+                .start()
+                .append("step", step);
+
+        // Check the step that has just finished
+        double nextRate = initialRate;
+        boolean finished = false;
+        if (state != null)
+        {
+            double rate = (Double) state.get("rate");
+            DBObject previous = (DBObject) state.get("snapshot");
+            boolean checked = previous != null && DRIVER_ID.equals(previous.get("driver"));
+            boolean breached = false;
+            DBObject throughput = new BasicDBObject();
+            if (checked)
+            {
+                DBObject scenarios = new BasicDBObject();
+                breached = checkStep(previous, snapshot, scenarios, throughput);
+                resultBuilder.append("scenarios", scenarios);
+            }
+            resultBuilder
+                    .append("checkedRate", rate)
+                    .append("checkedPhase", phase)
+                    .append("checked", checked)
+                    .append("breached", breached);
+
+            if (!checked)
+            {
+                // The step was measured by another driver or before a restart, so run it again
+                finished = step >= maxSteps;
+                nextRate = rate;
+            }
+            else if (PHASE_CONFIRM.equals(phase))
+            {
+                finished = true;
+                resultBuilder.append("confirmed", !breached);
+            }
+            else if (breached)
+            {
+                // Back off to the last good rate to confirm it, if there is one
+                finished = lastGoodRate <= 0.0;
+                phase = PHASE_CONFIRM;
+                nextRate = lastGoodRate;
+            }
+            else
+            {
+                lastGoodRate = rate;
+                lastGoodThroughput = throughput;
+                finished = step >= maxSteps;
+                nextRate = rate + rateIncrement;
+            }
+        }
+
+        if (finished)
+        {
+            DBObject resultData = resultBuilder
+                    .append("msg", "Saturation search complete.")
+                    .append("maxSustainableRate", lastGoodRate)
+                    .append("maxSustainableThroughput", lastGoodThroughput)
+                    .get();
+            return new EventResult(resultData, true);
+        }
+
+        // Raise the sessions of the next step
+        int sessionCount = (int) Math.max(1L, Math.round(nextRate * stepDuration / 1000.0));
+        double sessionInterval = (double) stepDuration / sessionCount;
+        List<Event> nextEvents = new ArrayList<Event>(sessionCount + 1);
+        for (int i = 0; i < sessionCount; i++)
+        {
+            UserData user = userDataService.getRandomUser();
+            if (user == null)
+            {
+                return new EventResult("Unable to run saturation search: no users available.", false);
+            }
+            long scheduledTime = now + (long) (i * sessionInterval);
+            nextEvents.add(new Event(eventNameStartSession, scheduledTime, user.getUsername()));
+        }
+        DBObject nextState = BasicDBObjectBuilder
+                .start()
+                .append("step", step + 1)
+                .append("phase", phase)
+                .append("rate", nextRate)
+                .append("lastGoodRate", lastGoodRate)
+                .append("lastGoodThroughput", lastGoodThroughput)
+                .append("snapshot", snapshot)
+                .get();
+        nextEvents.add(new Event(eventNameSaturationStep, now + stepDuration, nextState));
+
+        // Done
+        EventResult result = new EventResult(
+                resultBuilder
+                    .append("msg", "Started saturation search step.")
+                    .append("phase", phase)
+                    .append("rate", nextRate)
+                    .append("sessionCount", sessionCount)
+                    .get(),
+                nextEvents);
+
+        // Done
+        return result;
+    }
+
+    /**
+     * Check a step against the objectives
+     * 
+     * @param start                 the {@link #takeSnapshot(long) snapshot} taken at the start of the step
+     * @param end                   the snapshot taken at the end of the step
+     * @param scenarios             filled with the measurements of each scenario
+     * @param throughput            filled with the throughput (scenarios per second) of each scenario
+     * @return                      <tt>true</tt> if any scenario breached the objectives
+     */
+    private boolean checkStep(DBObject start, DBObject end, DBObject scenarios, DBObject throughput)
+    {
+        boolean breached = false;
+        double seconds = Math.max(1L, ((Number) end.get("time")).longValue() - ((Number) start.get("time")).longValue()) / 1000.0;
+        DBObject startScenarios = (DBObject) start.get("scenarios");
+        DBObject endScenarios = (DBObject) end.get("scenarios");
+        for (String scenario : endScenarios.keySet())
+        {
+            DBObject endScenario = (DBObject) endScenarios.get(scenario);
+            DBObject startScenario = (DBObject) startScenarios.get(scenario);
+            LatencyHistogram stepLatencies = LatencyHistogram.fromBuckets((DBObject) endScenario.get("latencies"));
+            if (startScenario != null)
+            {
+                stepLatencies = stepLatencies.since(LatencyHistogram.fromBuckets((DBObject) startScenario.get("latencies")));
+            }
+            long completed = getCountSince(startScenario, endScenario, "completed");
+            long events = getCountSince(startScenario, endScenario, "events");
+            long errors = getCountSince(startScenario, endScenario, "errors");
+
+            long p99 = stepLatencies.getValueAtPercentile(99.0);
+            double errorPercent = events == 0L ? 0.0 : 100.0 * errors / events;
+            boolean scenarioBreached = p99 > sloP99 || errorPercent > sloErrorPercent;
+            breached |= scenarioBreached;
+            double scenarioThroughput = completed / seconds;
+            throughput.put(scenario, scenarioThroughput);
+            scenarios.put(scenario, BasicDBObjectBuilder
+                    .start()
+                    .append("throughput", scenarioThroughput)
+                    .append("completed", completed)
+                    .append("p99", p99)
+                    .append("errorPercent", errorPercent)
+                    .append("breached", scenarioBreached)
+                    .get());
+        }
+        return breached;
+    }
+
+    /**
+     * @return                      the scenario name made usable as a MongoDB field name e.g. <tt>scenario-01</tt>
+     */
+    private static String toKey(String scenario)
+    {
+        return scenario.replace('.', '-');
+    }
+
+    private static long getCountSince(DBObject start, DBObject end, String field)
+    {
+        long endCount = ((Number) end.get(field)).longValue();
+        return start == null ? endCount : endCount - ((Number) start.get(field)).longValue();
+    }
+
+    /**
+     * Take a snapshot of the measurements of this driver, in a form that can be carried by the next step's event
+     * 
+     * @return                      the time, the driver and, for each {@link #toKey(String) scenario}, the
+     *                              measured latencies, the number of scenarios completed successfully and the
+     *                              number of events and errors
+     */
+    private DBObject takeSnapshot(long time)
+    {
+        DBObject scenarios = new BasicDBObject();
+        Map<String, Long> completedCounts = scenarioLatencyRecorder.getCompletedCounts();
+        for (Map.Entry<String, LatencyHistogram> entry : scenarioLatencyRecorder.copyHistograms().entrySet())
+        {
+            Long completed = completedCounts.get(entry.getKey());
+            scenarios.put(toKey(entry.getKey()), BasicDBObjectBuilder
+                    .start()
+                    .append("latencies", entry.getValue().toBuckets())
+                    .append("completed", completed == null ? 0L : completed)
+                    .append("events", 0L)
+                    .append("errors", 0L)
+                    .get());
+        }
+        for (Map.Entry<String, LiveMetrics.EventMetrics> entry : LiveMetrics.get().getEventMetrics().entrySet())
+        {
+            String eventName = entry.getKey();
+            if (!eventName.startsWith(SCENARIO_EVENT_PREFIX))
+            {
+                continue;
+            }
+            // e.g. cmis.scenario.01.findFolder is part of scenario.01
+            int scenarioEnd = eventName.indexOf('.', SCENARIO_EVENT_PREFIX.length());
+            String scenario = toKey(SessionLifecycle.SCENARIO_PREFIX +
+                    eventName.substring(SCENARIO_EVENT_PREFIX.length(), scenarioEnd < 0 ? eventName.length() : scenarioEnd));
+            DBObject counts = (DBObject) scenarios.get(scenario);
+            if (counts == null)
+            {
+                counts = BasicDBObjectBuilder
+                        .start()
+                        .append("latencies", new BasicDBObject())
+                        .append("completed", 0L)
+                        .append("events", 0L)
+                        .append("errors", 0L)
+                        .get();
+                scenarios.put(scenario, counts);
+            }
+            counts.put("events", ((Number) counts.get("events")).longValue() + entry.getValue().getCount());
+            counts.put("errors", ((Number) counts.get("errors")).longValue() + entry.getValue().getErrors());
+        }
+        return BasicDBObjectBuilder
+                .start()
+                .append("time", time)
+                .append("driver", DRIVER_ID)
+                .append("scenarios", scenarios)
+                .get();
+    }
+}
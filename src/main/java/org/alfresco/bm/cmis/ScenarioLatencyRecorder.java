@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps {@link LatencyHistogram latency histograms} of the end-to-end time of each scenario, from the
+ * time the scenario's session or think time was scheduled to end to the scenario's completion, including
+ * the time spent queuing for the scenario and between its events.  Failed scenarios are recorded too,
+ * up to the time of the failure.
+ * <p/>
+ * Since the latency is measured from the scheduled start, time lost while the driver falls behind is
+ * already included.  Optionally, a second histogram is corrected for coordinated omission by
+ * {@link LatencyHistogram#recordCorrected(long, long) back-filling} each latency longer than an expected
+ * interval; this only makes sense for a scenario that is meant to run at a fixed interval, so the
+ * correction is off by default.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ScenarioLatencyRecorder
+{
+    private final long expectedInterval;
+    private final ConcurrentMap<String, ScenarioLatencies> scenarios;
+
+    /**
+     * @param expectedInterval      the time (ms) at which each scenario is expected to repeat or 0 for no correction
+     */
+    public ScenarioLatencyRecorder(long expectedInterval)
+    {
+        this.expectedInterval = expectedInterval;
+        this.scenarios = new ConcurrentHashMap<String, ScenarioLatencies>();
+    }
+
+    /**
+     * @return                      <tt>true</tt> if corrected histograms are kept
+     */
+    public boolean isCorrected()
+    {
+        return expectedInterval > 0L;
+    }
+
+    /**
+     * @return                      the latencies of the scenario, created if necessary
+     */
+    public ScenarioLatencies getLatencies(String scenario)
+    {
+        ScenarioLatencies latencies = scenarios.get(scenario);
+        if (latencies == null)
+        {
+            ScenarioLatencies newLatencies = new ScenarioLatencies();
+            latencies = scenarios.putIfAbsent(scenario, newLatencies);
+            if (latencies == null)
+            {
+                latencies = newLatencies;
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * @return                      copies of the measured (uncorrected) histograms of all scenarios so far,
+     *                              by scenario name
+     */
+    public Map<String, LatencyHistogram> copyHistograms()
+    {
+        Map<String, LatencyHistogram> copies = new TreeMap<String, LatencyHistogram>();
+        for (Map.Entry<String, ScenarioLatencies> entry : scenarios.entrySet())
+        {
+            copies.put(entry.getKey(), entry.getValue().getMeasured().copy());
+        }
+        return copies;
+    }
+
+    /**
+     * @return                      the number of scenarios completed successfully so far, by scenario name
+     */
+    public Map<String, Long> getCompletedCounts()
+    {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, ScenarioLatencies> entry : scenarios.entrySet())
+        {
+            counts.put(entry.getKey(), entry.getValue().getCompleted());
+        }
+        return counts;
+    }
+
+    /**
+     * Record the end-to-end latency of a scenario
+     * 
+     * @param success               <tt>false</tt> if the scenario failed
+     * @return                      the scenario's latencies
+     */
+    public ScenarioLatencies record(String scenario, long latency, boolean success)
+    {
+        ScenarioLatencies latencies = getLatencies(scenario);
+        latencies.measured.record(latency);
+        if (expectedInterval > 0L)
+        {
+            latencies.corrected.recordCorrected(latency, expectedInterval);
+        }
+        if (!success)
+        {
+            latencies.failures.incrementAndGet();
+        }
+        return latencies;
+    }
+
+    /**
+     * The latencies of one scenario
+     */
+    public static class ScenarioLatencies
+    {
+        private final LatencyHistogram measured;
+        private final LatencyHistogram corrected;
+        private final AtomicLong failures;
+
+        private ScenarioLatencies()
+        {
+            this.measured = new LatencyHistogram();
+            this.corrected = new LatencyHistogram();
+            this.failures = new AtomicLong();
+        }
+
+        /**
+         * @return              the latencies as measured, one per scenario
+         */
+        public LatencyHistogram getMeasured()
+        {
+            return measured;
+        }
+
+        /**
+         * @return              the latencies corrected for coordinated omission, which is empty if there is
+         *                      no correction
+         */
+        public LatencyHistogram getCorrected()
+        {
+            return corrected;
+        }
+
+        /**
+         * @return              the number of scenarios completed successfully
+         */
+        public long getCompleted()
+        {
+            return measured.getCount() - failures.get();
+        }
+
+        /**
+         * @return              the number of scenarios that failed
+         */
+        public long getFailures()
+        {
+            return failures.get();
+        }
+    }
+}
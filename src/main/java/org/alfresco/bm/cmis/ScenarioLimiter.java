@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of concurrently-running instances of a single scenario on this driver.
+ * <p/>
+ * The weightings only control the <i>mix</i> of scenarios that are started; this limiter controls how
+ * many of each may be in flight at any one time.  Permits are never waited for on a thread: callers that
+ * cannot get a permit are expected to reschedule and try again later.
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class ScenarioLimiter
+{
+    private final String scenario;
+    private final int maxInFlight;
+    private final Semaphore semaphore;
+    private final AtomicInteger inFlight;
+    private final AtomicLong admitted;
+    private final AtomicLong rejected;
+    private final AtomicLong totalQueueWait;
+    private final AtomicLong maxQueueWait;
+
+    /**
+     * @param scenario                  the name of the scenario e.g. 'scenario.01'
+     * @param maxInFlight               the maximum number of scenario instances allowed to run at once
+     *                                  or zero (or less) for no limit
+     */
+    public ScenarioLimiter(String scenario, int maxInFlight)
+    {
+        this.scenario = scenario;
+        this.maxInFlight = maxInFlight;
+        this.semaphore = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        this.inFlight = new AtomicInteger();
+        this.admitted = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.totalQueueWait = new AtomicLong();
+        this.maxQueueWait = new AtomicLong();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScenarioLimiter [scenario=" + scenario + ", maxInFlight=" + maxInFlight + ", inFlight=" + inFlight + "]";
+    }
+
+    public String getScenario()
+    {
+        return scenario;
+    }
+
+    /**
+     * @return          the maximum number of concurrent instances or zero (or less) if unlimited
+     */
+    public int getMaxInFlight()
+    {
+        return maxInFlight;
+    }
+
+    /**
+     * @return          the number of scenario instances currently holding a permit
+     */
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    /**
+     * Attempt to get a permit to run the scenario without blocking.
+     *
+     * @return          a permit or <tt>null</tt> if the scenario is already running at capacity
+     */
+    public Permit tryAcquire()
+    {
+        if (semaphore != null && !semaphore.tryAcquire())
+        {
+            rejected.incrementAndGet();
+            return null;
+        }
+        inFlight.incrementAndGet();
+        admitted.incrementAndGet();
+        return new Permit();
+    }
+
+    /**
+     * Record the time that an admitted scenario spent waiting for its permit
+     *
+     * @param queueWait             the time (ms) between the scenario being scheduled and being admitted
+     */
+    public void recordQueueWait(long queueWait)
+    {
+        totalQueueWait.addAndGet(queueWait);
+        long max = maxQueueWait.get();
+        while (queueWait > max && !maxQueueWait.compareAndSet(max, queueWait))
+        {
+            max = maxQueueWait.get();
+        }
+    }
+
+    public long getAdmittedCount()
+    {
+        return admitted.get();
+    }
+
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * @return          the average queue wait (ms) of all admitted scenarios
+     */
+    public long getAverageQueueWait()
+    {
+        long count = admitted.get();
+        return count == 0L ? 0L : totalQueueWait.get() / count;
+    }
+
+    public long getMaxQueueWait()
+    {
+        return maxQueueWait.get();
+    }
+
+    /**
+     * A permit to run one instance of a scenario.  Releasing it more than once has no effect.
+     *
+     * @author Rui Fernandes
+     * @since 1.4
+     */
+    public class Permit
+    {
+        private final long acquiredTime;
+        private final AtomicBoolean released;
+
+        private Permit()
+        {
+            this.acquiredTime = System.currentTimeMillis();
+            this.released = new AtomicBoolean(false);
+        }
+
+        public String getScenario()
+        {
+            return scenario;
+        }
+
+        /**
+         * @return          the time (ms since epoch) that the permit was handed out
+         */
+        public long getAcquiredTime()
+        {
+            return acquiredTime;
+        }
+
+        /**
+         * Give the permit back to the limiter
+         *
+         * @return          <tt>true</tt> if this call released the permit or <tt>false</tt> if it was already released
+         */
+        public boolean release()
+        {
+            if (!released.compareAndSet(false, true))
+            {
+                return false;
+            }
+            inFlight.decrementAndGet();
+            if (semaphore != null)
+            {
+                semaphore.release();
+            }
+            return true;
+        }
+    }
+}
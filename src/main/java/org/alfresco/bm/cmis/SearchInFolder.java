@@ -121,19 +121,19 @@ public class SearchInFolder extends AbstractCMISEventProcessor
         Folder folder = data.getBreadcrumb().getLast();
         
         // Get details of how to page, etc
-        OperationContext ctx = data.getSession().getDefaultContext();
+        OperationContext ctx = getOperationContext(data.getSession());
         int pageSize = ctx.getMaxItemsPerPage();
         
         // Get a random string
         String[] searchStrings = getSearchStrings();
-        String searchString = AbstractCMISEventProcessor.getRandomSearchString(searchStrings);
+        String searchString = AbstractCMISEventProcessor.getRandomSearchString(searchStrings, data.getRandom());
         String query = String.format(
                 "SELECT D.* FROM cmis:document D WHERE IN_FOLDER('%s') AND CONTAINS('%s')",
                 folder.getId(),
                 searchString);
 
         super.resumeTimer();
-        ItemIterable<QueryResult> queryResults = data.getSession().query(query, false);
+        ItemIterable<QueryResult> queryResults = data.getSession().query(query, false, ctx);
         long totalResults = queryResults.getTotalNumItems();               // For information only
         int pageCount = 0;
         // We have to iterate using paging
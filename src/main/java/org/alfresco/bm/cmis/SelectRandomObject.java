@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import org.alfresco.bm.cmis.ObjectDataService.ObjectKind;
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * Pick an existing folder or document at random
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing a session.
+ *
+ * <h1>Actions</h1>
+ *
+ * Choose a folder or document from the {@link ObjectDataService mirror} of created objects, without querying
+ * the repository, and retrieve it by ID.  For a document, its parent folder is retrieved first, untimed, so
+ * that processors expecting a folder and a document can follow.  Objects that no longer exist are removed
+ * from the mirror and another one is chosen.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_OBJECT_SELECTED}: The {@link CMISEventData data object} with the folder added to the
+ * breadcrumb and, for a document, the current document set<br/>
+ * or the same event again if the chosen object no longer exists<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class SelectRandomObject extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_OBJECT_SELECTED = "cmis.objectSelected";
+
+    private final ObjectDataService objectDataService;
+    private final ObjectKind kind;
+    private String eventNameObjectSelected;
+
+    /**
+     * @param objectDataService         the mirror of created objects
+     * @param kind                      the kind of object to select
+     */
+    public SelectRandomObject(ObjectDataService objectDataService, ObjectKind kind)
+    {
+        super();
+        this.objectDataService = objectDataService;
+        this.kind = kind;
+        this.eventNameObjectSelected = EVENT_NAME_OBJECT_SELECTED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_OBJECT_SELECTED default} event name for 'object selected'.
+     */
+    public void setEventNameObjectSelected(String eventNameObjectSelected)
+    {
+        this.eventNameObjectSelected = eventNameObjectSelected;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to select object; no session provided.", false);
+        }
+        Session session = data.getSession();
+        OperationContext ctx = getOperationContext(session);
+
+        DBObject objectData = objectDataService.getRandomObject(kind, data.getRandom());
+        if (objectData == null)
+        {
+            return new EventResult("Unable to select object; no " + kind + " objects have been recorded.", false);
+        }
+        String id = (String) objectData.get(ObjectDataService.FIELD_ID);
+        String path = (String) objectData.get(ObjectDataService.FIELD_PATH);
+
+        CmisObject object;
+        Folder parent = null;
+        try
+        {
+            if (kind == ObjectKind.DOCUMENT)
+            {
+                String parentId = (String) objectData.get(ObjectDataService.FIELD_PARENT_ID);
+                parent = (Folder) session.getObject(parentId, ctx);
+            }
+            super.resumeTimer();                            // Timer control
+            object = session.getObject(id, ctx);
+            super.stopTimer();                              // Timer control
+        }
+        catch (CmisObjectNotFoundException e)
+        {
+            super.stopTimer();                              // Timer control
+            // Deleted since it was recorded, so forget it and choose again
+            objectDataService.removeObject(id);
+            Event retryEvent = new Event(event.getName(), data);
+            return new EventResult(
+                    BasicDBObjectBuilder
+                        .start()
+                        .append("msg", "Selected object no longer exists; choosing again.")
+                        .append("kind", kind.toString())
+                        .append("id", id)
+                        .append("path", path)
+                        .get(),
+                    retryEvent);
+        }
+
+        if (kind == ObjectKind.DOCUMENT)
+        {
+            if (!(object instanceof Document))
+            {
+                return new EventResult("Selected object is not a document: " + object, false);
+            }
+            data.getBreadcrumb().add(parent);
+            data.setDocument((Document) object);
+        }
+        else
+        {
+            if (!(object instanceof Folder))
+            {
+                return new EventResult("Selected object is not a folder: " + object, false);
+            }
+            data.getBreadcrumb().add((Folder) object);
+        }
+
+        // Done
+        Event doneEvent = new Event(eventNameObjectSelected, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully selected object.")
+                    .append("kind", kind.toString())
+                    .append("id", object.getId())
+                    .append("name", object.getName())
+                    .append("path", path)
+                    .append("size", objectData.get(ObjectDataService.FIELD_SIZE))
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.alfresco.bm.event.Event;
+
+/**
+ * Keeps a CMIS session running several scenarios, with think times in between, instead of
+ * terminating it after the first scenario.
+ * <p/>
+ * The scenario following a completed one is drawn from a transition matrix between scenarios.
+ * Scenarios without a row in the matrix go back to the {@link #setEventNameNextScenario(String) next
+ * scenario event}, which by default draws a scenario using the configured scenario weights.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class SessionLifecycle
+{
+    public static final String EVENT_NAME_NEXT_SCENARIO = "cmis.sessionStarted";
+    public static final String SCENARIO_EVENT_NAME_FORMAT = "cmis.scenario.%s.acquire";
+    public static final String SCENARIO_PREFIX = "scenario.";
+
+    /**
+     * The distribution of the think time between scenarios
+     */
+    public enum ThinkTime
+    {
+        /** No think time */
+        NONE,
+        /** Always the mean think time */
+        FIXED,
+        /** Uniformly distributed between 0 and twice the mean */
+        UNIFORM,
+        /** Exponentially distributed around the mean, as for independent user actions */
+        EXPONENTIAL
+    }
+
+    private final int iterations;
+    private final Map<String, List<String>> transitionEvents;
+    private final Map<String, int[]> transitionWeights;
+    private ThinkTime thinkTime;
+    private long thinkTimeMean;
+    private long thinkTimeMax;
+    private String eventNameNextScenario;
+
+    /**
+     * @param iterations            the number of scenarios each session runs (at least 1)
+     * @param transitions           the scenario transition matrix or empty to draw every scenario using the
+     *                              scenario weights.  Rows are separated by '<b>;</b>' and each row gives the
+     *                              relative weights of the next scenarios e.g. <tt>01=02:30,03:70;02=01:100</tt>.
+     */
+    public SessionLifecycle(int iterations, String transitions)
+    {
+        if (iterations < 1)
+        {
+            throw new IllegalArgumentException("A session must run at least one scenario.");
+        }
+        this.iterations = iterations;
+        this.transitionEvents = new HashMap<String, List<String>>();
+        this.transitionWeights = new HashMap<String, int[]>();
+        this.thinkTime = ThinkTime.NONE;
+        this.thinkTimeMean = 0L;
+        this.thinkTimeMax = 0L;
+        this.eventNameNextScenario = EVENT_NAME_NEXT_SCENARIO;
+        parseTransitions(transitions);
+    }
+
+    private void parseTransitions(String transitions)
+    {
+        if (transitions == null || transitions.trim().isEmpty())
+        {
+            return;
+        }
+        for (String row : transitions.trim().split("\\s*;\\s*"))
+        {
+            String[] fromAndTo = row.split("\\s*=\\s*");
+            if (fromAndTo.length != 2)
+            {
+                throw new IllegalArgumentException("Scenario transitions must be of the form 'from=to:weight,...': " + row);
+            }
+            String[] targets = fromAndTo[1].split("\\s*,\\s*");
+            List<String> events = new ArrayList<String>(targets.length);
+            int[] weights = new int[targets.length];
+            int total = 0;
+            for (int i = 0; i < targets.length; i++)
+            {
+                String[] targetAndWeight = targets[i].split("\\s*:\\s*");
+                if (targetAndWeight.length != 2)
+                {
+                    throw new IllegalArgumentException("Scenario transitions must be of the form 'to:weight': " + targets[i]);
+                }
+                int weight = Integer.parseInt(targetAndWeight[1]);
+                if (weight < 0)
+                {
+                    throw new IllegalArgumentException("Scenario transition weights may not be negative: " + targets[i]);
+                }
+                total += weight;
+                events.add(String.format(SCENARIO_EVENT_NAME_FORMAT, targetAndWeight[0]));
+                weights[i] = total;
+            }
+            if (total == 0)
+            {
+                throw new IllegalArgumentException("Scenario transitions need at least one positive weight: " + row);
+            }
+            transitionEvents.put(fromAndTo[0].trim(), events);
+            transitionWeights.put(fromAndTo[0].trim(), weights);
+        }
+    }
+
+    /**
+     * Override the default {@link ThinkTime#NONE no think time} between scenarios
+     */
+    public void setThinkTime(ThinkTime thinkTime)
+    {
+        this.thinkTime = thinkTime;
+    }
+
+    /**
+     * Set the mean think time (ms) between scenarios
+     */
+    public void setThinkTimeMean(long thinkTimeMean)
+    {
+        if (thinkTimeMean < 0L)
+        {
+            throw new IllegalArgumentException("The think time may not be negative.");
+        }
+        this.thinkTimeMean = thinkTimeMean;
+    }
+
+    /**
+     * Set the longest think time (ms) between scenarios or 0 for no limit
+     */
+    public void setThinkTimeMax(long thinkTimeMax)
+    {
+        if (thinkTimeMax < 0L)
+        {
+            throw new IllegalArgumentException("The think time may not be negative.");
+        }
+        this.thinkTimeMax = thinkTimeMax;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_NEXT_SCENARIO default} event name used to draw a scenario by weight
+     */
+    public void setEventNameNextScenario(String eventNameNextScenario)
+    {
+        this.eventNameNextScenario = eventNameNextScenario;
+    }
+
+    /**
+     * Get the start of the session's next scenario.  The data of the next scenario only keeps the
+     * session, its tags, the number of scenarios completed and the change log token, so that the
+     * session goes on reading the change log from where it stopped.
+     * 
+     * @param data                  the data of the scenario that has just completed
+     * @param scenario              the name of the completed scenario e.g. <tt>scenario.01</tt> or <tt>null</tt>
+     * @return                      the next scenario's first event or <tt>null</tt> if the session is over
+     */
+    public Event nextScenario(CMISEventData data, String scenario)
+    {
+        int scenarioCount = data.getScenarioCount() + 1;
+        if (scenarioCount >= iterations)
+        {
+            return null;
+        }
+        CMISEventData nextData = new CMISEventData(data.getSession(), data.getRandom(), data.getWorkers());
+        nextData.getSessionTags().putAll(data.getSessionTags());
+        nextData.setScenarioCount(scenarioCount);
+        nextData.setChangeLogToken(data.getChangeLogToken());
+        // The scenario's own state starts afresh
+        nextData.setChangeLogPolls(0);
+        nextData.setVersionCount(0);
+        nextData.setScenarioPermit(null);
+
+        long scheduledTime = System.currentTimeMillis() + getThinkTime(data.getRandom());
+        nextData.setScenarioScheduledTime(scheduledTime);
+        return new Event(getNextEventName(scenario, data.getRandom()), scheduledTime, nextData);
+    }
+
+    private String getNextEventName(String scenario, Random random)
+    {
+        if (scenario == null)
+        {
+            return eventNameNextScenario;
+        }
+        String from = scenario.startsWith(SCENARIO_PREFIX) ? scenario.substring(SCENARIO_PREFIX.length()) : scenario;
+        List<String> events = transitionEvents.get(from);
+        if (events == null)
+        {
+            return eventNameNextScenario;
+        }
+        int[] weights = transitionWeights.get(from);
+        int draw = random.nextInt(weights[weights.length - 1]);
+        for (int i = 0; i < weights.length; i++)
+        {
+            if (draw < weights[i])
+            {
+                return events.get(i);
+            }
+        }
+        return events.get(events.size() - 1);
+    }
+
+    /**
+     * @return                      the time (ms) to wait before the next scenario
+     */
+    long getThinkTime(Random random)
+    {
+        long time;
+        switch (thinkTime)
+        {
+            case FIXED:
+                time = thinkTimeMean;
+                break;
+            case UNIFORM:
+                time = (long) (random.nextDouble() * 2.0 * thinkTimeMean);
+                break;
+            case EXPONENTIAL:
+                time = (long) (-thinkTimeMean * Math.log(1.0 - random.nextDouble()));
+                break;
+            default:
+                time = 0L;
+        }
+        return thinkTimeMax > 0L ? Math.min(time, thinkTimeMax) : time;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The worker threads of a session, shared by all the events and scenarios run with the session
+ * so that events making parallel calls do not start new threads every time.
+ * <p/>
+ * The pool is only created when first needed and grows to the largest thread count asked for but
+ * each caller gets a view of the pool that runs no more than the thread count it asked for at a time.
+ * Idle threads are released after a while, so sessions that end without {@link #shutdown() shutting down}
+ * their workers do not keep any threads.
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class SessionWorkers
+{
+    /** How long (ms) idle workers are kept */
+    private static final long KEEP_ALIVE = 60000L;
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private ThreadPoolExecutor executor;
+
+    public SessionWorkers()
+    {
+        this.executor = null;
+    }
+
+    /**
+     * @param threadCount           the number of calls to make in parallel
+     * @return                      the session's workers, running no more than the given number of calls at a time;
+     *                              the workers are shut down with the session and not by the caller
+     */
+    public synchronized ExecutorService get(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("At least one worker thread is required.");
+        }
+        if (executor == null || executor.isShutdown())
+        {
+            executor = new ThreadPoolExecutor(
+                    threadCount, threadCount,
+                    KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new WorkerThreadFactory(POOL_COUNT.incrementAndGet()));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        else if (executor.getMaximumPoolSize() < threadCount)
+        {
+            executor.setMaximumPoolSize(threadCount);
+            executor.setCorePoolSize(threadCount);
+        }
+        return new BoundedExecutor(executor, threadCount);
+    }
+
+    /**
+     * Stop the workers once the session has finished with them
+     */
+    public synchronized void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Runs tasks on the shared workers, holding back any tasks beyond its own thread count
+     * until earlier tasks have finished
+     */
+    private static class BoundedExecutor extends AbstractExecutorService
+    {
+        private final ExecutorService workers;
+        private final int threadCount;
+        private final Queue<Runnable> waiting;
+        private int running;
+
+        private BoundedExecutor(ExecutorService workers, int threadCount)
+        {
+            this.workers = workers;
+            this.threadCount = threadCount;
+            this.waiting = new LinkedList<Runnable>();
+            this.running = 0;
+        }
+
+        @Override
+        public void execute(Runnable task)
+        {
+            synchronized (this)
+            {
+                if (running >= threadCount)
+                {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            try
+            {
+                run(task);
+            }
+            catch (RejectedExecutionException e)
+            {
+                synchronized (this)
+                {
+                    running--;
+                }
+                throw e;
+            }
+        }
+
+        private void run(final Runnable task)
+        {
+            workers.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    finally
+                    {
+                        runNext();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Start the next waiting task, if there is one, in place of a task that has finished
+         */
+        private void runNext()
+        {
+            while (true)
+            {
+                Runnable task;
+                synchronized (this)
+                {
+                    task = waiting.poll();
+                    if (task == null)
+                    {
+                        running--;
+                        return;
+                    }
+                }
+                try
+                {
+                    run(task);
+                    return;
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // The session's workers have been shut down
+                    if (task instanceof Future)
+                    {
+                        ((Future<?>) task).cancel(false);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void shutdown()
+        {
+            throw new UnsupportedOperationException("The workers are shut down with the session.");
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            throw new UnsupportedOperationException("The workers are shut down with the session.");
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return workers.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return workers.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return workers.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Daemon threads named after the pool
+     */
+    private static class WorkerThreadFactory implements ThreadFactory
+    {
+        private final int poolNumber;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        private WorkerThreadFactory(int poolNumber)
+        {
+            this.poolNumber = poolNumber;
+        }
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "cmis-session-" + poolNumber + "-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -21,6 +21,10 @@ package org.alfresco.bm.cmis;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.alfresco.bm.event.Event;
 import org.alfresco.bm.event.EventResult;
@@ -49,7 +53,12 @@ import com.mongodb.DBObject;
  * 
  * <h1>Actions</h1>
  * 
- * Opens a new CMISEventData instance containing the CMIS session to the target server and repository
+ * Opens a new CMISEventData instance containing the CMIS session to the target server and repository.
+ * When a {@link #setFilterExperiment(String) filter experiment} is configured, each new session is given
+ * the next of the property filters, in turn, and the filter is recorded as a session tag.
+ * With the {@link #BINDING_TYPE_MIXED mixed} binding type, sessions are spread evenly across the
+ * AtomPub and browser bindings according to the {@link #setBrowserRatio(int) browser ratio} and
+ * the binding is recorded as a session tag.
  * 
  * <h1>Output</h1>
  * 
@@ -62,6 +71,8 @@ public class StartCMISSession extends AbstractCMISEventProcessor
 {
     public static final String REPOSITORY_ID_USE_FIRST = "---";
     public static final String EVENT_NAME_SESSION_STARTED = "cmis.sessionStarted";
+    public static final String BINDING_TYPE_MIXED = "mixed";
+    public static final int DEFAULT_BROWSER_RATIO = 50;
     
     private final UserDataService userDataService;
     private final SessionService sessionService;
@@ -71,12 +82,27 @@ public class StartCMISSession extends AbstractCMISEventProcessor
     private final OperationContext ctx;
     
     private String eventNameSessionStarted;
+    private String[] filterVariants;
+    private final AtomicInteger sessionCount;
+    private int cacheSize;
+    private long cacheTtl;
+    private String browserBindingUrl;
+    private int browserRatio;
+    private final AtomicInteger bindingCount;
+    private String timingHeaders;
+    private String requestIdHeaders;
+    private long randomSeed;
+    private final ConcurrentMap<String, AtomicInteger> userSessionCounts;
+    private boolean startLoadSession;
 
     /**
      * @param userDataService           service to retrieve user authentication details
      * @param sessionService            service to register a load test session
      * @param bindingUrl                the URL as required by the {@link SessionParameter.ATOMPUB_URL} or {@link SessionParameter.BROWSER_URL} parameter
      * @param bindingType               one of the supported CMIS binding types: 'browser' or 'atompub'
+     *                                  or '{@link #BINDING_TYPE_MIXED mixed}', in which case the binding URL
+     *                                  is the AtomPub URL and the {@link #setBrowserBindingUrl(String) browser URL}
+     *                                  must also be given
      * @param repositoryId              the ID of the repository required by the {@link SessionParameter.REPOSITORY_ID} parameter
      * @param ctx                       the operation context for all calls made by the session.
      *                                  Event processors must not adjust but should copy it if changes are required.
@@ -95,6 +121,15 @@ public class StartCMISSession extends AbstractCMISEventProcessor
         this.repositoryId = repositoryId;
         this.ctx = ctx;
         this.eventNameSessionStarted = EVENT_NAME_SESSION_STARTED;
+        this.filterVariants = new String[0];
+        this.sessionCount = new AtomicInteger();
+        this.cacheSize = 0;
+        this.cacheTtl = 0L;
+        this.browserRatio = DEFAULT_BROWSER_RATIO;
+        this.bindingCount = new AtomicInteger();
+        this.randomSeed = 0L;
+        this.userSessionCounts = new ConcurrentHashMap<String, AtomicInteger>();
+        this.startLoadSession = true;
     }
 
     /**
@@ -105,6 +140,156 @@ public class StartCMISSession extends AbstractCMISEventProcessor
         this.eventNameSessionStarted = eventNameSessionStarted;
     }
 
+    /**
+     * Interleave sessions using different property filters so that the cost of each can be compared.
+     * A session's filter replaces that of the session context and of every {@link OperationContextProfile profile}.
+     * 
+     * @param filterExperiment      property filters separated by '<b>|</b>' e.g.
+     *                              <tt>*|cmis:objectId,cmis:name</tt> or empty to use the
+     *                              operation context filter for all sessions
+     * 
+     * @since 1.4
+     */
+    public void setFilterExperiment(String filterExperiment)
+    {
+        if (filterExperiment == null || filterExperiment.trim().isEmpty())
+        {
+            this.filterVariants = new String[0];
+        }
+        else
+        {
+            this.filterVariants = filterExperiment.trim().split("\\s*\\|\\s*");
+        }
+    }
+
+    /**
+     * Override the OpenCMIS default number of objects held in each session's cache
+     * 
+     * @param cacheSize             the maximum number of cached objects or 0 to keep the OpenCMIS default
+     * 
+     * @since 1.4
+     */
+    public void setCacheSize(int cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Override the OpenCMIS default time that objects are kept in each session's cache
+     * 
+     * @param cacheTtl              the time to live (ms) of cached objects or 0 to keep the OpenCMIS default
+     * 
+     * @since 1.4
+     */
+    public void setCacheTtl(long cacheTtl)
+    {
+        this.cacheTtl = cacheTtl;
+    }
+
+    /**
+     * Set the browser binding URL used by sessions when the binding type is {@link #BINDING_TYPE_MIXED mixed}
+     * 
+     * @since 1.4
+     */
+    public void setBrowserBindingUrl(String browserBindingUrl)
+    {
+        this.browserBindingUrl = browserBindingUrl;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_BROWSER_RATIO default} percentage of sessions that use the browser binding
+     * when the binding type is {@link #BINDING_TYPE_MIXED mixed}
+     * 
+     * @since 1.4
+     */
+    public void setBrowserRatio(int browserRatio)
+    {
+        if (browserRatio < 0 || browserRatio > 100)
+        {
+            throw new IllegalArgumentException("The browser binding ratio must be a percentage: " + browserRatio);
+        }
+        this.browserRatio = browserRatio;
+    }
+
+    /**
+     * Record server timings from the given response headers
+     * 
+     * @param timingHeaders         comma-separated header names e.g. <tt>Server-Timing,X-Response-Time</tt>
+     * 
+     * @since 1.4
+     */
+    public void setTimingHeaders(String timingHeaders)
+    {
+        this.timingHeaders = timingHeaders;
+    }
+
+    /**
+     * Record the server's request IDs from the given response headers
+     * 
+     * @param requestIdHeaders      comma-separated header names e.g. <tt>X-Request-Id</tt>
+     * 
+     * @since 1.4
+     */
+    public void setRequestIdHeaders(String requestIdHeaders)
+    {
+        this.requestIdHeaders = requestIdHeaders;
+    }
+
+    /**
+     * Make the random choices of the sessions reproducible.  Each session has its own source of random
+     * choices, seeded from this seed, the user of the session and the number of sessions already started
+     * for that user, so the seeds do not depend on the order in which the users' sessions start.
+     * 
+     * @param randomSeed            the seed or 0 for different choices in every run
+     * 
+     * @since 1.4
+     */
+    public void setRandomSeed(long randomSeed)
+    {
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * Spread the browser sessions evenly between the AtomPub sessions
+     * 
+     * @param sessionIndex          the number of mixed binding sessions already started
+     * @param browserRatio          the percentage of sessions using the browser binding
+     * @return                      <tt>true</tt> if the session uses the browser binding
+     * 
+     * @since 1.4
+     */
+    static boolean isBrowserSession(long sessionIndex, int browserRatio)
+    {
+        return ((sessionIndex + 1) * browserRatio) / 100 > (sessionIndex * browserRatio) / 100;
+    }
+
+    /**
+     * @param randomSeed            the seed of the run
+     * @param username              the user of the session
+     * @param userSessionIndex      the number of sessions already started for the user
+     * @return                      the seed of the session's source of random choices
+     * 
+     * @since 1.4
+     */
+    static long getSessionSeed(long randomSeed, String username, int userSessionIndex)
+    {
+        // Spread the seeds of similar users and of consecutive sessions of a user
+        return randomSeed
+                ^ (username.hashCode() * 0x9E3779B97F4A7C15L)
+                ^ (userSessionIndex * 0xC2B2AE3D27D4EB4FL);
+    }
+
+    /**
+     * Override the default of registering each CMIS session as a load test session.  Sessions that only
+     * prepare data should not count towards the completion of the test.
+     * 
+     * @since 1.4
+     */
+    public void setStartLoadSession(boolean startLoadSession)
+    {
+        this.startLoadSession = startLoadSession;
+    }
+
     @Override
     protected EventResult processCMISEvent(Event event) throws Exception
     {
@@ -123,15 +308,28 @@ public class StartCMISSession extends AbstractCMISEventProcessor
         
         // Build session parameters
         Map<String, String> parameters = new HashMap<String, String>();
-        if (bindingType != null && bindingType.equals(BindingType.ATOMPUB.value()))
+        String sessionBindingType = bindingType;
+        String sessionBindingUrl = bindingUrl;
+        boolean mixed = BINDING_TYPE_MIXED.equals(bindingType);
+        if (mixed)
+        {
+            if (browserBindingUrl == null || browserBindingUrl.trim().isEmpty())
+            {
+                return new EventResult("A browser binding URL is required for the mixed binding type.", false);
+            }
+            boolean browser = isBrowserSession(bindingCount.getAndIncrement() & Integer.MAX_VALUE, browserRatio);
+            sessionBindingType = browser ? BindingType.BROWSER.value() : BindingType.ATOMPUB.value();
+            sessionBindingUrl = browser ? browserBindingUrl : bindingUrl;
+        }
+        if (sessionBindingType != null && sessionBindingType.equals(BindingType.ATOMPUB.value()))
         {
             parameters.put(SessionParameter.BINDING_TYPE, BindingType.ATOMPUB.value());
-            parameters.put(SessionParameter.ATOMPUB_URL, bindingUrl);
+            parameters.put(SessionParameter.ATOMPUB_URL, sessionBindingUrl);
         }
-        else if (bindingType != null && bindingType.equals(BindingType.BROWSER.value()))
+        else if (sessionBindingType != null && sessionBindingType.equals(BindingType.BROWSER.value()))
         {
             parameters.put(SessionParameter.BINDING_TYPE, BindingType.BROWSER.value());
-            parameters.put(SessionParameter.BROWSER_URL, bindingUrl);
+            parameters.put(SessionParameter.BROWSER_URL, sessionBindingUrl);
         }
         else
         {
@@ -139,13 +337,31 @@ public class StartCMISSession extends AbstractCMISEventProcessor
         }
         parameters.put(SessionParameter.USER, username);
         parameters.put(SessionParameter.PASSWORD, password);
+        parameters.put(SessionParameter.HTTP_INVOKER_CLASS, CMISHttpInvoker.class.getName());
+        if (timingHeaders != null)
+        {
+            parameters.put(CMISHttpInvoker.PARAM_TIMING_HEADERS, timingHeaders);
+        }
+        if (requestIdHeaders != null)
+        {
+            parameters.put(CMISHttpInvoker.PARAM_REQUEST_ID_HEADERS, requestIdHeaders);
+        }
+        parameters.put(SessionParameter.CACHE_CLASS, InstrumentedCache.class.getName());
+        if (cacheSize > 0)
+        {
+            parameters.put(SessionParameter.CACHE_SIZE_OBJECTS, Integer.toString(cacheSize));
+        }
+        if (cacheTtl > 0L)
+        {
+            parameters.put(SessionParameter.CACHE_TTL_OBJECTS, Long.toString(cacheTtl));
+        }
         
         // First check if we need to choose a repository
         SessionFactory sessionFactory = SessionFactoryImpl.newInstance();
         List<Repository> repositories = sessionFactory.getRepositories(parameters);
         if (repositories.size() == 0)
         {
-            return new EventResult("Unable to find any repositories at " + bindingUrl + " with user " + username, false);
+            return new EventResult("Unable to find any repositories at " + sessionBindingUrl + " with user " + username, false);
         }
         if (repositoryId.equals(REPOSITORY_ID_USE_FIRST))
         {
@@ -159,11 +375,46 @@ public class StartCMISSession extends AbstractCMISEventProcessor
         
         // Create the session
         Session session = SessionFactoryImpl.newInstance().createSession(parameters);
-        session.setDefaultContext(ctx);
+        OperationContext sessionCtx = ctx;
+        String filterVariant = null;
+        if (filterVariants.length > 0)
+        {
+            // Give each session the next filter in turn
+            int variant = (sessionCount.getAndIncrement() & Integer.MAX_VALUE) % filterVariants.length;
+            filterVariant = filterVariants[variant];
+            sessionCtx = OperationContextProfile.newFilterVariant(ctx, filterVariant);
+        }
+        session.setDefaultContext(sessionCtx);
 
         // get repository info
         RepositoryInfo repositoryInfo = session.getRepositoryInfo();
-        CMISEventData cmisData = new CMISEventData(session);
+        Random random;
+        if (randomSeed == 0L)
+        {
+            random = new Random();
+        }
+        else
+        {
+            AtomicInteger userSessionCount = userSessionCounts.get(username);
+            if (userSessionCount == null)
+            {
+                AtomicInteger newCount = new AtomicInteger();
+                userSessionCount = userSessionCounts.putIfAbsent(username, newCount);
+                userSessionCount = userSessionCount == null ? newCount : userSessionCount;
+            }
+            random = new Random(getSessionSeed(randomSeed, username, userSessionCount.getAndIncrement()));
+        }
+        CMISEventData cmisData = new CMISEventData(session, random);
+        // Scenario latencies include the time the session spent waiting to start
+        cmisData.setScenarioScheduledTime(event.getScheduledTime());
+        if (filterVariant != null)
+        {
+            cmisData.getSessionTags().put("filter", filterVariant);
+        }
+        if (mixed)
+        {
+            cmisData.getSessionTags().put("binding", sessionBindingType);
+        }
         
         super.stopTimer();                              // Timer control
 
@@ -174,16 +425,20 @@ public class StartCMISSession extends AbstractCMISEventProcessor
                     .append("msg", "Successfully created CMIS session.")
                     .append("repository", parameters.get(SessionParameter.REPOSITORY_ID))
                     .append("user", username)
-                    .append("ctx", convertOperationContext(ctx))
+                    .append("binding", sessionBindingType)
+                    .append("ctx", convertOperationContext(sessionCtx))
                     .get(),
                 doneEvent);
         
         // Start a load test session
-        DBObject sessionObj = new BasicDBObject()
-                .append("repository", repositoryInfo.toString())
-                .append("user", username);
-        String sessionId = sessionService.startSession(sessionObj);
-        doneEvent.setSessionId(sessionId);
+        if (startLoadSession)
+        {
+            DBObject sessionObj = new BasicDBObject()
+                    .append("repository", repositoryInfo.toString())
+                    .append("user", username);
+            String sessionId = sessionService.startSession(sessionObj);
+            doneEvent.setSessionId(sessionId);
+        }
         
         // Done
         return result;
@@ -196,6 +451,7 @@ public class StartCMISSession extends AbstractCMISEventProcessor
     {
         return BasicDBObjectBuilder.start()
             .append("pageSize", ctx.getMaxItemsPerPage())
+            .append("filter", ctx.getFilterString())
             .append("orderBy", ctx.getOrderBy())
             .append("cacheEnabled", ctx.isCacheEnabled())
             .append("includeAcls", ctx.isIncludeAcls())
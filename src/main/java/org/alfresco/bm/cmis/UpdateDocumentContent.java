@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.alfresco.bm.file.TestFileService;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Replace the content of a document
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing an existing document, usually a private working copy.
+ *
+ * <h1>Actions</h1>
+ *
+ * Overwrite the content of the document with a random file
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_CONTENT_UPDATED}: The {@link CMISEventData data object} with the updated document<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class UpdateDocumentContent extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_CONTENT_UPDATED = "cmis.contentUpdated";
+
+    private final TestFileService testFileService;
+    private String eventNameContentUpdated;
+
+    /**
+     * @param testFileService               service to provide sample files for upload
+     */
+    public UpdateDocumentContent(TestFileService testFileService)
+    {
+        super();
+        this.testFileService = testFileService;
+        this.eventNameContentUpdated = EVENT_NAME_CONTENT_UPDATED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_CONTENT_UPDATED default} event name for 'content updated'.
+     */
+    public void setEventNameContentUpdated(String eventNameContentUpdated)
+    {
+        this.eventNameContentUpdated = eventNameContentUpdated;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to update content; no session provided.", false);
+        }
+        if (data.getDocument() == null)
+        {
+            return new EventResult("Unable to update content; no document provided.", false);
+        }
+        Document document = data.getDocument();
+
+        File file = testFileService.getFile();
+        if (file == null)
+        {
+            return new EventResult("No test files exist for upload: " + testFileService, false);
+        }
+
+        // Open up a stream to the file
+        long fileLen = file.length();
+        InputStream is = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            ContentStream cs = new ContentStreamImpl(document.getName(), BigInteger.valueOf(fileLen), "application/octet-stream", is);
+
+            // Make sure we only time the content update
+            super.resumeTimer();                            // Timer control
+            document = document.setContentStream(cs, true);
+            super.stopTimer();                              // Timer control
+        }
+        finally
+        {
+            try { is.close(); } catch (IOException e) {}
+        }
+        if (document != null)
+        {
+            data.setDocument(document);
+        }
+
+        // Done
+        Event doneEvent = new Event(eventNameContentUpdated, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully updated document content.")
+                    .append("versionCount", data.getVersionCount())
+                    .push("document")
+                        .append("id", data.getDocument().getId())
+                        .append("name", data.getDocument().getName())
+                        .append("size", fileLen)
+                    .pop()
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
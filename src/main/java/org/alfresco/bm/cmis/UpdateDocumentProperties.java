@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Update properties of all documents referred to in the event data
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } that should contain document {@link CMISEventData#getObjectIds() object IDs}.
+ *
+ * <h1>Actions</h1>
+ *
+ * Set new values for the configured string properties on every document, either with one
+ * <tt>updateProperties</tt> call per document or with <tt>bulkUpdateProperties</tt> calls of a given batch size.
+ * The documents are fetched before the timer starts so that only the updates are timed.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_PROPERTIES_UPDATED}: the {@link CMISEventData data object} without changes<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class UpdateDocumentProperties extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_PROPERTIES_UPDATED = "cmis.propertiesUpdated";
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final String[] propertyIds;
+    private final boolean bulk;
+    private int batchSize;
+    private String eventNamePropertiesUpdated;
+
+    /**
+     * @param propertyIds           comma-separated list of the IDs of the (string) properties to update
+     * @param bulk                  <tt>true</tt> to use the bulk update service or <tt>false</tt> to update each
+     *                              document in turn
+     */
+    public UpdateDocumentProperties(String propertyIds, boolean bulk)
+    {
+        super();
+        if (propertyIds == null || propertyIds.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("At least one property to update must be given.");
+        }
+        this.propertyIds = propertyIds.trim().split("\\s*,\\s*");
+        this.bulk = bulk;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.eventNamePropertiesUpdated = EVENT_NAME_PROPERTIES_UPDATED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_PROPERTIES_UPDATED default} event name for 'properties updated'.
+     */
+    public void setEventNamePropertiesUpdated(String eventNamePropertiesUpdated)
+    {
+        this.eventNamePropertiesUpdated = eventNamePropertiesUpdated;
+    }
+
+    /**
+     * Override the {@link #DEFAULT_BATCH_SIZE default} number of documents sent in each bulk update
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize < 1)
+        {
+            throw new IllegalArgumentException("The bulk update batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to update CMIS properties: no session provided.", false);
+        }
+        if (data.getObjectIds().isEmpty())
+        {
+            return new EventResult("Unable to update CMIS properties: no document provided.", false);
+        }
+        Session session = data.getSession();
+
+        // Get the documents before timing the updates
+        List<CmisObject> objects = new ArrayList<CmisObject>(data.getObjectIds().size());
+        for (String objectId : data.getObjectIds())
+        {
+            objects.add(session.getObject(session.createObjectId(objectId), getOperationContext(session)));
+        }
+        String value = super.getName() + "-" + System.currentTimeMillis();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (String propertyId : propertyIds)
+        {
+            properties.put(propertyId, value);
+        }
+
+        int calls = 0;
+        long updated = 0L;
+        long start = System.currentTimeMillis();
+        super.resumeTimer();                                // Timer control
+        if (bulk)
+        {
+            for (int i = 0; i < objects.size(); i += batchSize)
+            {
+                List<CmisObject> batch = objects.subList(i, Math.min(i + batchSize, objects.size()));
+                List<?> batchUpdated = session.bulkUpdateProperties(batch, properties, null, null);
+                calls++;
+                updated += batchUpdated.size();
+            }
+        }
+        else
+        {
+            for (CmisObject object : objects)
+            {
+                object.updateProperties(properties, false);
+                calls++;
+                updated++;
+            }
+        }
+        super.stopTimer();                                  // Timer control
+        long elapsed = System.currentTimeMillis() - start;
+
+        // Done
+        Event doneEvent = new Event(eventNamePropertiesUpdated, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully updated document properties.")
+                    .append("mode", bulk ? "bulk" : "single")
+                    .append("batchSize", bulk ? batchSize : 1)
+                    .append("documents", objects.size())
+                    .append("updated", updated)
+                    .append("properties", propertyIds.length)
+                    .append("calls", calls)
+                    .append("timePerDocument", (double) elapsed / objects.size())
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.alfresco.bm.file.TestFileService;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+
+import com.mongodb.BasicDBObjectBuilder;
+
+/**
+ * Upload a batch of new files concurrently
+ *
+ * <h1>Input</h1>
+ *
+ * A {@link CMISEventData data object } containing folder {@link CMISEventData#getObjectIds() object IDs}
+ * or, failing that, an existing folder.
+ *
+ * <h1>Actions</h1>
+ *
+ * Upload random files, spread evenly across the folders, using the session's {@link SessionWorkers workers}.
+ * The IDs of the new documents replace the {@link CMISEventData#getObjectIds() object IDs} of the data.
+ *
+ * <h1>Output</h1>
+ *
+ * {@link #EVENT_NAME_DOCUMENTS_UPLOADED}: The {@link CMISEventData data object} with the document IDs<br/>
+ *
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+public class UploadDocuments extends AbstractCMISEventProcessor
+{
+    public static final String EVENT_NAME_DOCUMENTS_UPLOADED = "cmis.documentsUploaded";
+
+    private final TestFileService testFileService;
+    private final int documentCount;
+    private final int threadCount;
+    private String eventNameDocumentsUploaded;
+
+    /**
+     * @param testFileService               service to provide sample files for upload
+     * @param documentCount                 the number of documents to upload
+     * @param threadCount                   the maximum number of documents to upload at the same time
+     */
+    public UploadDocuments(TestFileService testFileService, int documentCount, int threadCount)
+    {
+        super();
+        if (documentCount < 1 || threadCount < 1)
+        {
+            throw new IllegalArgumentException("Document count and thread count must be at least 1.");
+        }
+        this.testFileService = testFileService;
+        this.documentCount = documentCount;
+        this.threadCount = threadCount;
+        this.eventNameDocumentsUploaded = EVENT_NAME_DOCUMENTS_UPLOADED;
+    }
+
+    /**
+     * Override the {@link #EVENT_NAME_DOCUMENTS_UPLOADED default} event name for 'documents uploaded'.
+     */
+    public void setEventNameDocumentsUploaded(String eventNameDocumentsUploaded)
+    {
+        this.eventNameDocumentsUploaded = eventNameDocumentsUploaded;
+    }
+
+    @Override
+    protected EventResult processCMISEvent(Event event) throws Exception
+    {
+        super.suspendTimer();                               // Timer control
+
+        CMISEventData data = (CMISEventData) event.getData();
+        // A quick double-check
+        if (data == null)
+        {
+            return new EventResult("Unable to upload files; no session provided.", false);
+        }
+        List<String> folderIds = new ArrayList<String>(data.getObjectIds());
+        if (folderIds.isEmpty())
+        {
+            if (data.getBreadcrumb().isEmpty())
+            {
+                return new EventResult("Unable to upload files; no folder provided.", false);
+            }
+            folderIds.add(data.getBreadcrumb().getLast().getId());
+        }
+        final Session session = data.getSession();
+
+        // Choose the files up front
+        List<Callable<DocumentUploaded>> tasks = new ArrayList<Callable<DocumentUploaded>>(documentCount);
+        for (int i = 0; i < documentCount; i++)
+        {
+            final File file = testFileService.getFile();
+            if (file == null)
+            {
+                return new EventResult("No test files exist for upload: " + testFileService, false);
+            }
+            final String folderId = folderIds.get(i % folderIds.size());
+            final String filename = super.getName() + "-" + i + "-" + file.getName();
+            tasks.add(new Callable<DocumentUploaded>()
+            {
+                @Override
+                public DocumentUploaded call() throws Exception
+                {
+                    Map<String, String> newFileProps = new HashMap<String, String>();
+                    newFileProps.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+                    newFileProps.put(PropertyIds.NAME, filename);
+
+                    // Open up a stream to the file
+                    long fileLen = file.length();
+                    InputStream is = new BufferedInputStream(new FileInputStream(file));
+                    try
+                    {
+                        ContentStream cs = new ContentStreamImpl(filename, BigInteger.valueOf(fileLen), "application/octet-stream", is);
+                        ObjectId newFileId = session.createDocument(newFileProps, session.createObjectId(folderId), cs, VersioningState.MAJOR);
+                        return new DocumentUploaded(newFileId.getId(), fileLen);
+                    }
+                    finally
+                    {
+                        try { is.close(); } catch (IOException e) {}
+                    }
+                }
+            });
+        }
+
+        ExecutorService executor = data.getWorkers().get(Math.min(threadCount, documentCount));
+        long start = System.currentTimeMillis();
+        super.resumeTimer();                                // Timer control
+        List<DocumentUploaded> uploaded = invokeAll(executor, tasks);
+        super.stopTimer();                                  // Timer control
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+
+        // Hand the documents on for further processing
+        long totalBytes = 0L;
+        data.getObjectIds().clear();
+        for (DocumentUploaded documentUploaded : uploaded)
+        {
+            data.getObjectIds().add(documentUploaded.id);
+            totalBytes += documentUploaded.size;
+        }
+        double docsPerSec = uploaded.size() * 1000.0 / elapsed;
+        double mbPerSec = totalBytes * 1000.0 / elapsed / (1024.0 * 1024.0);
+
+        // Done
+        Event doneEvent = new Event(eventNameDocumentsUploaded, data);
+        EventResult result = new EventResult(
+                BasicDBObjectBuilder
+                    .start()
+                    .append("msg", "Successfully uploaded documents.")
+                    .append("folders", folderIds.size())
+                    .append("documents", uploaded.size())
+                    .append("bytes", totalBytes)
+                    .append("threadCount", threadCount)
+                    .append("elapsed", elapsed)
+                    .append("docsPerSec", docsPerSec)
+                    .append("mbPerSec", mbPerSec)
+                    .get(),
+                doneEvent);
+
+        // Done
+        return result;
+    }
+
+    /**
+     * The outcome of uploading a single document
+     */
+    private static class DocumentUploaded
+    {
+        private final String id;
+        private final long size;
+        private DocumentUploaded(String id, long size)
+        {
+            this.id = id;
+            this.size = size;
+        }
+    }
+}
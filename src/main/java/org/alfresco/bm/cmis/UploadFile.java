@@ -26,7 +26,6 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import org.alfresco.bm.event.Event;
 import org.alfresco.bm.event.EventResult;
@@ -64,6 +63,7 @@ public class UploadFile extends AbstractCMISEventProcessor
     
     private final TestFileService testFileService;
     private String eventNameFileUploaded;
+    private ObjectDataService objectDataService;
 
     /**
      * @param testFileService               service to provide sample files for upload
@@ -83,6 +83,16 @@ public class UploadFile extends AbstractCMISEventProcessor
         this.eventNameFileUploaded = eventNameFileUploaded;
     }
 
+    /**
+     * Record the documents created in a {@link ObjectDataService mirror} so that later scenarios can find them
+     * 
+     * @since 1.4
+     */
+    public void setObjectDataService(ObjectDataService objectDataService)
+    {
+        this.objectDataService = objectDataService;
+    }
+
     @Override
     protected EventResult processCMISEvent(Event event) throws Exception
     {
@@ -106,7 +116,7 @@ public class UploadFile extends AbstractCMISEventProcessor
         {
             return new EventResult("No test files exist for upload: " + testFileService, false);
         }
-        String filename = UUID.randomUUID().toString() + "-" + super.getName() + "-" + file.getName();
+        String filename = getRandomName(data.getRandom()) + "-" + super.getName() + "-" + file.getName();
         
         Map<String, String> newFileProps = new HashMap<String, String>();
         newFileProps.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
@@ -114,10 +124,10 @@ public class UploadFile extends AbstractCMISEventProcessor
         
         // Open up a stream to the file
         InputStream is = new BufferedInputStream(new FileInputStream(file));
+        long fileLen = file.length();
         Document newFile = null;
         try
         {
-            long fileLen = file.length();
             ContentStream cs = new ContentStreamImpl(filename, BigInteger.valueOf(fileLen), "application/octet-stream", is);
 
             // Make sure we only time the document creation
@@ -136,6 +146,14 @@ public class UploadFile extends AbstractCMISEventProcessor
 
         // Append it to the breadcrumb
         data.setDocument(newFile);
+        if (objectDataService != null)
+        {
+            String folderPath = folder.getPath();
+            objectDataService.addDocument(
+                    newFile.getId(), newFile.getType().getId(), newFile.getName(),
+                    (folderPath.endsWith("/") ? folderPath : folderPath + "/") + newFile.getName(), folder.getId(),
+                    fileLen, "application/octet-stream");
+        }
         
         // Done
         Event doneEvent = new Event(eventNameFileUploaded, data);
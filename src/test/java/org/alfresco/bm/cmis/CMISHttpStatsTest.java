@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.chemistry.opencmis.client.bindings.spi.http.Response;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+
+/**
+ * @see CMISHttpStats
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class CMISHttpStatsTest
+{
+    private static final String[] TIMING_HEADERS = new String[] {"Server-Timing", "X-Response-Time"};
+    private static final String[] REQUEST_ID_HEADERS = new String[] {"X-Request-Id"};
+
+    private static Response getResponse(String... headerNamesAndValues)
+    {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (int i = 0; i < headerNamesAndValues.length; i += 2)
+        {
+            headers.put(headerNamesAndValues[i], Collections.singletonList(headerNamesAndValues[i + 1]));
+        }
+        return new Response(200, "OK", headers, new ByteArrayInputStream(new byte[0]), null);
+    }
+
+    @Test
+    public void testParseTiming()
+    {
+        assertEquals(12.5, CMISHttpStats.parseTiming("total;dur=12.5"), 0.001);
+        assertEquals(7.0, CMISHttpStats.parseTiming("db;dur=3, app;dur=4;desc=\"Application\""), 0.001);
+        assertEquals(5.0, CMISHttpStats.parseTiming("cache;desc=\"Cache Read\";dur=\"5\""), 0.001);
+        assertEquals(42.0, CMISHttpStats.parseTiming("42"), 0.001);
+        assertEquals(42.5, CMISHttpStats.parseTiming(" 42.5ms"), 0.001);
+        assertEquals(-1.0, CMISHttpStats.parseTiming("miss"), 0.001);
+        assertEquals(-1.0, CMISHttpStats.parseTiming(""), 0.001);
+    }
+
+    @Test
+    public void testRecord()
+    {
+        CMISHttpStats.reset();
+        CMISHttpStats stats = CMISHttpStats.get();
+        stats.record(getResponse("Server-Timing", "app;dur=30", "X-Request-Id", "r1"), 50L, TIMING_HEADERS, REQUEST_ID_HEADERS);
+        stats.record(getResponse("X-Response-Time", "10"), 20L, TIMING_HEADERS, REQUEST_ID_HEADERS);
+        stats.record(getResponse(), 100L, TIMING_HEADERS, REQUEST_ID_HEADERS);
+        stats.addBytes(1000L);
+
+        DBObject dbObject = stats.toDBObject();
+        assertEquals(3, dbObject.get("requests"));
+        assertEquals(1000L, dbObject.get("bytes"));
+        assertEquals(170L, dbObject.get("responseTime"));
+        // Only the requests that the server timed count towards the network time
+        assertEquals(2, dbObject.get("serverTimed"));
+        assertEquals(40.0, (Double) dbObject.get("serverTime"), 0.001);
+        assertEquals(30.0, (Double) dbObject.get("networkTime"), 0.001);
+        assertEquals(Collections.singletonList("r1"), dbObject.get("requestIds"));
+
+        CMISHttpStats.reset();
+        assertEquals(0, CMISHttpStats.get().getRequests());
+        assertEquals(0L, CMISHttpStats.get().getBytes());
+    }
+
+    @Test
+    public void testRequestIdLimit()
+    {
+        CMISHttpStats.reset();
+        CMISHttpStats stats = CMISHttpStats.get();
+        for (int i = 0; i < CMISHttpStats.MAX_REQUEST_IDS * 2; i++)
+        {
+            stats.record(getResponse("X-Request-Id", "r" + i), 1L, TIMING_HEADERS, REQUEST_ID_HEADERS);
+        }
+        assertEquals(CMISHttpStats.MAX_REQUEST_IDS, ((BasicDBList) stats.toDBObject().get("requestIds")).size());
+    }
+
+    @Test
+    public void testShare() throws Exception
+    {
+        CMISHttpStats.reset();
+        Callable<Void> task = new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                CMISHttpStats.get().addBytes(10L);
+                return null;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                executor.submit(CMISHttpStats.share(task)).get();
+            }
+            // Unshared tasks count on their own thread
+            executor.submit(task).get();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertEquals(100L, CMISHttpStats.get().getBytes());
+    }
+}
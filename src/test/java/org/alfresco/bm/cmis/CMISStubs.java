@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Stand-ins for the OpenCMIS client interfaces so that event processors can be driven without a server
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+class CMISStubs
+{
+    private CMISStubs()
+    {
+    }
+
+    /**
+     * @param type                  the interface to implement
+     * @param handler               answers the calls; <tt>null</tt> answers give the default value
+     *                              of primitive types and identity for <tt>equals</tt>, <tt>hashCode</tt>
+     *                              and <tt>toString</tt>
+     * @return                      an implementation of the interface
+     */
+    static <T> T stub(final Class<T> type, final InvocationHandler handler)
+    {
+        Object stub = Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[] {type},
+                new InvocationHandler()
+                {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        Object answer = handler.invoke(proxy, method, args);
+                        if (answer != null)
+                        {
+                            return answer;
+                        }
+                        String name = method.getName();
+                        Class<?> returnType = method.getReturnType();
+                        if (name.equals("equals") && args != null && args.length == 1)
+                        {
+                            return proxy == args[0];
+                        }
+                        else if (name.equals("hashCode") && args == null)
+                        {
+                            return System.identityHashCode(proxy);
+                        }
+                        else if (name.equals("toString") && args == null)
+                        {
+                            return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                        }
+                        else if (returnType == boolean.class)
+                        {
+                            return Boolean.FALSE;
+                        }
+                        else if (returnType == int.class)
+                        {
+                            return 0;
+                        }
+                        else if (returnType == long.class)
+                        {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                });
+        return type.cast(stub);
+    }
+
+    /**
+     * @param type                  the interface to implement
+     * @param answers               pairs of method names and the values they return
+     * @return                      an implementation of the interface
+     */
+    static <T> T stub(Class<T> type, final Object ... answers)
+    {
+        return stub(type, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                for (int i = 0; i < answers.length; i += 2)
+                {
+                    if (method.getName().equals(answers[i]))
+                    {
+                        return answers[i + 1];
+                    }
+                }
+                return null;
+            }
+        });
+    }
+}
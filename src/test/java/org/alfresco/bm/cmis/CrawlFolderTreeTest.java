@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.Tree;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+
+/**
+ * @see CrawlFolderTree
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class CrawlFolderTreeTest
+{
+    /** Children are listed in pages of this size */
+    private static final int PAGE_SIZE = 2;
+
+    private CMISEventData data;
+
+    @After
+    public void tearDown()
+    {
+        if (data != null)
+        {
+            data.getWorkers().shutdown();
+        }
+    }
+
+    /**
+     * @param children              the children of the folder
+     * @return                      a folder that lists its children in pages and returns them as trees
+     */
+    private static Folder newFolder(final String name, final CmisObject ... children)
+    {
+        return CMISStubs.stub(Folder.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String methodName = method.getName();
+                if (methodName.equals("getId") || methodName.equals("getName"))
+                {
+                    return name;
+                }
+                else if (methodName.equals("getChildren"))
+                {
+                    return getPage(children, 0);
+                }
+                else if (methodName.equals("getDescendants"))
+                {
+                    return getTrees(children, (Integer) args[0], false);
+                }
+                else if (methodName.equals("getFolderTree"))
+                {
+                    return getTrees(children, (Integer) args[0], true);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Document newDocument(String name)
+    {
+        return CMISStubs.stub(Document.class, "getId", name, "getName", name);
+    }
+
+    /**
+     * @return                      the page of children starting at the given child
+     */
+    private static ItemIterable<CmisObject> getPage(final CmisObject[] children, final int skip)
+    {
+        final List<CmisObject> page = new ArrayList<CmisObject>();
+        for (int i = skip; i < Math.min(children.length, skip + PAGE_SIZE); i++)
+        {
+            page.add(children[i]);
+        }
+        @SuppressWarnings("unchecked")
+        ItemIterable<CmisObject> iterable = CMISStubs.stub(ItemIterable.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("skipTo"))
+                {
+                    return getPage(children, ((Long) args[0]).intValue());
+                }
+                else if (method.getName().equals("getPageNumItems"))
+                {
+                    return (long) page.size();
+                }
+                else if (method.getName().equals("iterator"))
+                {
+                    return page.iterator();
+                }
+                return null;
+            }
+        });
+        return iterable;
+    }
+
+    /**
+     * @return                      the children as trees down to the given depth
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Tree<CmisObject>> getTrees(CmisObject[] children, int depth, boolean foldersOnly) throws Exception
+    {
+        List<Tree<CmisObject>> trees = new ArrayList<Tree<CmisObject>>();
+        if (depth == 0)
+        {
+            return trees;
+        }
+        for (CmisObject child : children)
+        {
+            List<Tree<CmisObject>> childTrees = new ArrayList<Tree<CmisObject>>();
+            if (child instanceof Folder)
+            {
+                childTrees = (List<Tree<CmisObject>>) (foldersOnly
+                        ? ((Folder) child).getFolderTree(depth - 1, null)
+                        : ((Folder) child).getDescendants(depth - 1, null));
+            }
+            else if (foldersOnly)
+            {
+                continue;
+            }
+            trees.add(CMISStubs.stub(Tree.class, "getItem", child, "getChildren", childTrees));
+        }
+        return trees;
+    }
+
+    /**
+     * <pre>
+     * root
+     *   d0
+     *   f1
+     *     d11
+     *     d12
+     *   f2
+     *     f21
+     *       d211
+     * </pre>
+     */
+    private static Folder newTree()
+    {
+        return newFolder(
+                "root",
+                newDocument("d0"),
+                newFolder("f1", newDocument("d11"), newDocument("d12")),
+                newFolder("f2", newFolder("f21", newDocument("d211"))));
+    }
+
+    /**
+     * @return                      the crawl statistics of the result
+     */
+    private DBObject crawl(CrawlFolderTree.Mode mode, int depth) throws Exception
+    {
+        CrawlFolderTree processor = new CrawlFolderTree(mode, depth, 2)
+        {
+            // The test drives the event without an event timer
+            @Override
+            protected void suspendTimer()
+            {
+            }
+
+            @Override
+            protected void resumeTimer()
+            {
+            }
+
+            @Override
+            protected void stopTimer()
+            {
+            }
+        };
+        data = new CMISEventData(CMISStubs.stub(Session.class));
+        data.getBreadcrumb().add(newTree());
+        EventResult result = processor.processCMISEvent(new Event("cmis.scenario.09.crawl", 0L, data));
+        assertEquals(true, result.isSuccess());
+        return (DBObject) ((DBObject) result.getData()).get("crawl");
+    }
+
+    private static void checkCrawl(DBObject crawl, long objects, long folders, int maxDepth)
+    {
+        assertEquals(objects, crawl.get("objects"));
+        assertEquals(folders, crawl.get("folders"));
+        assertEquals(maxDepth, crawl.get("maxDepth"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDepth()
+    {
+        new CrawlFolderTree(CrawlFolderTree.Mode.PARALLEL, 0, 1);
+    }
+
+    @Test
+    public void testDescendants() throws Exception
+    {
+        checkCrawl(crawl(CrawlFolderTree.Mode.DESCENDANTS, -1), 7L, 3L, 3);
+        checkCrawl(crawl(CrawlFolderTree.Mode.DESCENDANTS, 2), 6L, 3L, 2);
+    }
+
+    @Test
+    public void testFolderTree() throws Exception
+    {
+        checkCrawl(crawl(CrawlFolderTree.Mode.FOLDER_TREE, -1), 3L, 3L, 2);
+        checkCrawl(crawl(CrawlFolderTree.Mode.FOLDER_TREE, 1), 2L, 2L, 1);
+    }
+
+    @Test
+    public void testParallel() throws Exception
+    {
+        DBObject crawl = crawl(CrawlFolderTree.Mode.PARALLEL, -1);
+        checkCrawl(crawl, 7L, 3L, 3);
+        assertEquals(2, crawl.get("threadCount"));
+
+        // One entry per level, each listing the folders found on the level above
+        BasicDBList levels = (BasicDBList) crawl.get("levels");
+        assertEquals(3, levels.size());
+        int[] folders = {1, 2, 1};
+        long[] objects = {3L, 3L, 1L};
+        for (int i = 0; i < levels.size(); i++)
+        {
+            DBObject level = (DBObject) levels.get(i);
+            assertEquals(i + 1, level.get("level"));
+            assertEquals(folders[i], level.get("folders"));
+            assertEquals(objects[i], level.get("objects"));
+        }
+
+        // Only the levels asked for are listed
+        crawl = crawl(CrawlFolderTree.Mode.PARALLEL, 2);
+        checkCrawl(crawl, 6L, 3L, 2);
+        assertEquals(2, ((BasicDBList) crawl.get("levels")).size());
+    }
+}
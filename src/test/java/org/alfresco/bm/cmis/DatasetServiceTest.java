@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.mongo.MongoDBFactory;
+import org.alfresco.mongo.MongoDBForTestsFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+
+/**
+ * @see DatasetService
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class DatasetServiceTest
+{
+    private static final String COLLECTION = "test.dataset";
+
+    private MongoDBForTestsFactory dbFactory;
+    private MongoClient mongoClient;
+    private DB db;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dbFactory = new MongoDBForTestsFactory();
+        String uriWithoutDB = dbFactory.getMongoURIWithoutDB();
+        mongoClient = new MongoClient(new MongoClientURI(uriWithoutDB).getHosts().get(0));
+        db = new MongoDBFactory(mongoClient, "bm20-cmis-dataset").getObject();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (mongoClient != null)
+        {
+            mongoClient.close();
+        }
+        if (dbFactory != null)
+        {
+            dbFactory.destroy();
+        }
+    }
+
+    private DatasetService getDatasetService(int fanOut)
+    {
+        return new DatasetService(db, COLLECTION, "/Sites/data", "dataset", 2, fanOut, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge()
+    {
+        new DatasetService(db, COLLECTION, "/", "dataset", 20, 10, 1);
+    }
+
+    @Test
+    public void testPlanAndClaim()
+    {
+        DatasetService datasetService = getDatasetService(2);
+        // 1 + 2 + 4 folders
+        assertEquals(7L, datasetService.plan());
+        assertEquals("Planning again must not add folders", 7L, datasetService.plan());
+
+        // Higher levels are claimed first and every folder is claimed once
+        Set<String> ids = new HashSet<String>();
+        int lastDepth = 0;
+        for (int i = 0; i < 7; i++)
+        {
+            DBObject folderRecord = datasetService.claim();
+            assertNotNull(folderRecord);
+            int depth = ((Number) folderRecord.get(DatasetService.FIELD_DEPTH)).intValue();
+            assertTrue("Claimed out of order", depth >= lastDepth);
+            lastDepth = depth;
+            assertTrue("Claimed twice", ids.add((String) folderRecord.get(DatasetService.FIELD_ID)));
+            assertEquals(DatasetService.STATE_IN_PROGRESS, folderRecord.get(DatasetService.FIELD_STATE));
+        }
+        assertNull(datasetService.claim());
+        assertEquals(new HashSet<String>(Arrays.asList("/", "/f0", "/f1", "/f0/f0-0", "/f0/f0-1", "/f1/f1-0", "/f1/f1-1")), ids);
+        assertEquals(7L, datasetService.countRemaining());
+
+        datasetService.progress("/f0", 2);
+        datasetService.done("/");
+        assertEquals(6L, datasetService.countRemaining());
+        assertTrue(datasetService.getLastUpdated() > 0L);
+    }
+
+    @Test
+    public void testResume()
+    {
+        DatasetService datasetService = getDatasetService(2);
+        datasetService.plan();
+        DBObject root = datasetService.claim();
+        datasetService.done((String) root.get(DatasetService.FIELD_ID));
+        DBObject interrupted = datasetService.claim();
+        datasetService.progress((String) interrupted.get(DatasetService.FIELD_ID), 2);
+
+        // The folder being built is available again and keeps its progress
+        DatasetService resumed = getDatasetService(2);
+        assertEquals(6L, resumed.plan());
+        DBObject reclaimed = null;
+        for (DBObject folderRecord = resumed.claim(); folderRecord != null; folderRecord = resumed.claim())
+        {
+            if (folderRecord.get(DatasetService.FIELD_ID).equals(interrupted.get(DatasetService.FIELD_ID)))
+            {
+                reclaimed = folderRecord;
+            }
+        }
+        assertNotNull("The interrupted folder was not claimed again", reclaimed);
+        assertEquals(2, ((Number) reclaimed.get(DatasetService.FIELD_DOCUMENTS)).intValue());
+    }
+
+    @Test
+    public void testShapeChanged()
+    {
+        DatasetService datasetService = getDatasetService(2);
+        datasetService.plan();
+        datasetService.done((String) datasetService.claim().get(DatasetService.FIELD_ID));
+        assertEquals(6L, datasetService.countRemaining());
+
+        // 1 + 3 + 9 folders, all to be built
+        DatasetService wider = getDatasetService(3);
+        assertEquals(13L, wider.plan());
+
+        // Another seed gives other content, so nothing already built can be kept
+        wider.done((String) wider.claim().get(DatasetService.FIELD_ID));
+        DatasetService reseeded = getDatasetService(3);
+        reseeded.setSeed(2L);
+        assertEquals(13L, reseeded.plan());
+    }
+
+    @Test
+    public void testNamesAndContent()
+    {
+        DatasetService datasetService = getDatasetService(2);
+        assertEquals("/Sites/data/dataset", datasetService.getFolderPath(DatasetService.ROOT_ID));
+        assertEquals("/Sites/data/dataset/f0/f0-1", datasetService.getFolderPath("/f0/f0-1"));
+        assertEquals("dataset-0.gif", datasetService.getDocumentName(DatasetService.ROOT_ID, 0));
+        assertEquals("f0-1-2.gif", datasetService.getDocumentName("/f0/f0-1", 2));
+
+        byte[] content = datasetService.getContent("/f0", 1);
+        assertEquals(10240, content.length);
+        assertEquals('G', content[0]);
+        assertEquals('a', content[5]);
+        assertTrue("Content must be reproducible", Arrays.equals(content, getDatasetService(2).getContent("/f0", 1)));
+        assertFalse("Documents must differ", Arrays.equals(content, datasetService.getContent("/f0", 2)));
+        DatasetService reseeded = getDatasetService(2);
+        reseeded.setSeed(2L);
+        assertFalse("Seeds must give different content", Arrays.equals(content, reseeded.getContent("/f0", 1)));
+    }
+
+    @Test
+    public void testSizes()
+    {
+        DatasetService datasetService = getDatasetService(2);
+        datasetService.setSizeDistribution(DatasetService.SizeDistribution.EXPONENTIAL);
+        datasetService.setSizeMean(1000L);
+        datasetService.setSizeMax(5000L);
+        long total = 0L;
+        for (int i = 0; i < 1000; i++)
+        {
+            int size = datasetService.getContent("/f0", i).length;
+            assertTrue("Document above the maximum size: " + size, size <= 5000);
+            total += size;
+        }
+        long mean = total / 1000L;
+        assertTrue("Bad mean size: " + mean, mean > 800L && mean < 1200L);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.DBObject;
+
+/**
+ * @see DownloadFile
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class DownloadFileTest
+{
+    /** The offsets of the ranges fetched */
+    private final List<Long> offsets = new ArrayList<Long>();
+
+    /**
+     * @return                      a document with the given content length that records the ranges fetched
+     */
+    private Document getDocument(final long contentLength)
+    {
+        return CMISStubs.stub(Document.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String methodName = method.getName();
+                if (methodName.equals("getId") || methodName.equals("getName"))
+                {
+                    return "doc";
+                }
+                else if (methodName.equals("getContentStreamLength"))
+                {
+                    return contentLength;
+                }
+                else if (methodName.equals("getContentStream") && args != null && args.length == 2)
+                {
+                    long offset = ((BigInteger) args[0]).longValue();
+                    long length = ((BigInteger) args[1]).longValue();
+                    offsets.add(offset);
+                    byte[] range = new byte[(int) Math.max(0L, Math.min(length, contentLength - offset))];
+                    return CMISStubs.stub(ContentStream.class, "getStream", new ByteArrayInputStream(range));
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return                      the result of downloading ranges of a document with the given content length
+     */
+    private EventResult download(DownloadFile.RangeMode mode, int rangeSize, int rangeCount, long contentLength) throws Exception
+    {
+        DownloadFile processor = new DownloadFile()
+        {
+            // The test drives the event without an event timer
+            @Override
+            protected void suspendTimer()
+            {
+            }
+
+            @Override
+            protected void resumeTimer()
+            {
+            }
+
+            @Override
+            protected void stopTimer()
+            {
+            }
+        };
+        processor.setRangeMode(mode);
+        processor.setRangeSize(rangeSize);
+        processor.setRangeCount(rangeCount);
+
+        Document document = getDocument(contentLength);
+        Session session = CMISStubs.stub(Session.class, "getObjectByPath", document);
+        CMISEventData data = new CMISEventData(session, new Random(1L));
+        data.getBreadcrumb().add(CMISStubs.stub(Folder.class, "getPath", "/test"));
+        data.setDocument(document);
+        return processor.processCMISEvent(new Event("cmis.scenario.02.downloadFile", 0L, data));
+    }
+
+    private static DBObject getRanges(EventResult result)
+    {
+        assertTrue(result.isSuccess());
+        return (DBObject) ((DBObject) result.getData()).get("ranges");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCachedLookup()
+    {
+        new DownloadFile().setLookup(ObjectLookup.CACHE);
+    }
+
+    @Test
+    public void testSequential() throws Exception
+    {
+        // The last range is cut short by the end of the content
+        DBObject ranges = getRanges(download(DownloadFile.RangeMode.SEQUENTIAL, 100, 10, 250L));
+        assertEquals(Arrays.asList(0L, 100L, 200L), offsets);
+        assertEquals(3, ranges.get("count"));
+        assertEquals(250L, ranges.get("bytes"));
+        assertEquals("SEQUENTIAL", ranges.get("mode"));
+
+        // No more than the range count is fetched
+        offsets.clear();
+        ranges = getRanges(download(DownloadFile.RangeMode.SEQUENTIAL, 100, 2, 250L));
+        assertEquals(Arrays.asList(0L, 100L), offsets);
+        assertEquals(200L, ranges.get("bytes"));
+    }
+
+    @Test
+    public void testRandom() throws Exception
+    {
+        DBObject ranges = getRanges(download(DownloadFile.RangeMode.RANDOM, 100, 50, 1000L));
+        assertEquals(50, offsets.size());
+        for (long offset : offsets)
+        {
+            assertTrue("Range starts outside the content: " + offset, offset >= 0L && offset <= 900L);
+        }
+        assertEquals(50, ranges.get("count"));
+        // Every range lies wholly within the content
+        assertEquals(5000L, ranges.get("bytes"));
+
+        // Content smaller than a range is fetched from the start
+        offsets.clear();
+        ranges = getRanges(download(DownloadFile.RangeMode.RANDOM, 100, 5, 60L));
+        assertEquals(Arrays.asList(0L, 0L, 0L, 0L, 0L), offsets);
+        assertEquals(300L, ranges.get("bytes"));
+    }
+
+    @Test
+    public void testNoContent() throws Exception
+    {
+        EventResult result = download(DownloadFile.RangeMode.SEQUENTIAL, 100, 10, 0L);
+        assertFalse(result.isSuccess());
+        assertTrue(offsets.isEmpty());
+    }
+}
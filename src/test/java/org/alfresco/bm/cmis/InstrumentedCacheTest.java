@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.DBObject;
+
+/**
+ * @see InstrumentedCache
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class InstrumentedCacheTest
+{
+    /**
+     * @return              an object with the given ID and no properties
+     */
+    private static CmisObject getObject(final String id)
+    {
+        return (CmisObject) Proxy.newProxyInstance(
+                CmisObject.class.getClassLoader(),
+                new Class<?>[] {CmisObject.class},
+                new InvocationHandler()
+                {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        if (method.getName().equals("getId"))
+                        {
+                            return id;
+                        }
+                        else if (method.getName().equals("getProperties"))
+                        {
+                            return Collections.emptyList();
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testHitsAndMisses()
+    {
+        InstrumentedCache.CacheStats stats = new InstrumentedCache.CacheStats();
+        CmisObject a = getObject("a");
+        stats.read("a", null);
+        stats.put(a);
+        stats.read("a", a);
+        stats.read("a", a);
+        assertEquals(2L, stats.getHits());
+        assertEquals(1L, stats.getMisses());
+        assertEquals(0L, stats.getExpiries());
+    }
+
+    @Test
+    public void testSizeAndMemory()
+    {
+        InstrumentedCache.CacheStats stats = new InstrumentedCache.CacheStats();
+        stats.put(getObject("a"));
+        stats.put(getObject("b"));
+        long bytes = stats.getEstimatedBytes();
+        assertTrue("No memory estimated", bytes > 0L);
+        // Putting an object again replaces it
+        stats.put(getObject("a"));
+        assertEquals(2, stats.getSize());
+        assertEquals(bytes, stats.getEstimatedBytes());
+
+        stats.remove("a");
+        assertEquals(1, stats.getSize());
+        assertEquals(bytes / 2L, stats.getEstimatedBytes());
+        stats.clear();
+        assertEquals(0, stats.getSize());
+        assertEquals(0L, stats.getEstimatedBytes());
+    }
+
+    @Test
+    public void testEvictions()
+    {
+        InstrumentedCache.CacheStats stats = new InstrumentedCache.CacheStats();
+        stats.setLimits(2, 60000L);
+        CmisObject a = getObject("a");
+        stats.put(a);
+        stats.put(getObject("b"));
+        // Reading 'a' makes 'b' the least recently used
+        stats.read("a", a);
+        stats.put(getObject("c"));
+        assertEquals(2, stats.getSize());
+        assertEquals(1L, stats.getEvictions());
+
+        stats.remove("b");
+        assertEquals("The wrong object was evicted", 2, stats.getSize());
+        stats.remove("a");
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    public void testExpiries() throws Exception
+    {
+        InstrumentedCache.CacheStats stats = new InstrumentedCache.CacheStats();
+        stats.setLimits(10, 1L);
+        stats.put(getObject("a"));
+        Thread.sleep(10L);
+        stats.read("a", null);
+        assertEquals(1L, stats.getMisses());
+        assertEquals(1L, stats.getExpiries());
+        assertEquals(0, stats.getSize());
+        assertEquals(0L, stats.getEstimatedBytes());
+
+        // A miss on an object that was never cached is not an expiry
+        stats.read("b", null);
+        assertEquals(1L, stats.getExpiries());
+    }
+
+    @Test
+    public void testSnapshot()
+    {
+        InstrumentedCache.CacheStats stats = new InstrumentedCache.CacheStats();
+        CmisObject a = getObject("a");
+        stats.put(a);
+        stats.read("a", a);
+        long[] snapshot = stats.snapshot();
+        stats.read("a", a);
+        stats.read("b", null);
+
+        DBObject dbObject = stats.toDBObject(snapshot);
+        assertEquals(1L, dbObject.get("hits"));
+        assertEquals(1L, dbObject.get("misses"));
+        DBObject session = (DBObject) dbObject.get("session");
+        assertEquals(2L, session.get("hits"));
+        assertEquals(1L, session.get("misses"));
+        assertEquals(1, session.get("size"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see LatencyHistogram
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest
+{
+    @Test
+    public void testBucketBoundaries()
+    {
+        for (long value = 0L; value < 1000000L; value++)
+        {
+            int bucket = LatencyHistogram.getBucket(value);
+            assertTrue("Value above its bucket: " + value, LatencyHistogram.getBucketMax(bucket) >= value);
+            assertTrue("Value in the wrong bucket: " + value, bucket == 0 || LatencyHistogram.getBucketMax(bucket - 1) < value);
+        }
+        int last = LatencyHistogram.getBucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketMax(last));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.getValueAtPercentile(99.0));
+        for (long value = 1L; value <= 1000L; value++)
+        {
+            histogram.record(value);
+        }
+        assertEquals(1000L, histogram.getCount());
+        assertEquals(1000L, histogram.getMax());
+        assertEquals(1L, histogram.getValueAtPercentile(0.0));
+        assertEquals(1000L, histogram.getValueAtPercentile(100.0));
+        // Within the bucket precision
+        long p50 = histogram.getValueAtPercentile(50.0);
+        assertTrue("Bad p50: " + p50, p50 >= 500L && p50 <= 530L);
+        long p99 = histogram.getValueAtPercentile(99.0);
+        assertTrue("Bad p99: " + p99, p99 >= 990L && p99 <= 1000L);
+    }
+
+    @Test
+    public void testCoordinatedOmissionCorrection()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++)
+        {
+            histogram.recordCorrected(10L, 100L);
+        }
+        // A stall of 1s hides the 9 requests due every 100ms during it
+        histogram.recordCorrected(1000L, 100L);
+        assertEquals(109L, histogram.getCount());
+        assertEquals(1000L, histogram.getMax());
+        assertEquals(10L, histogram.getValueAtPercentile(50.0));
+        long p95 = histogram.getValueAtPercentile(95.0);
+        assertTrue("Bad corrected p95: " + p95, p95 >= 500L && p95 <= 530L);
+
+        // No correction without an interval
+        LatencyHistogram uncorrected = new LatencyHistogram();
+        uncorrected.recordCorrected(1000L, 0L);
+        assertEquals(1L, uncorrected.getCount());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see LiveMetricsServlet
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class LiveMetricsServletTest
+{
+    @Before
+    public void setUp()
+    {
+        LiveMetrics.get().reset();
+    }
+
+    @After
+    public void tearDown()
+    {
+        LiveMetrics.get().reset();
+    }
+
+    /**
+     * @return                      the lines of text published for the live metrics
+     */
+    private static List<String> getText()
+    {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        LiveMetricsServlet.write(writer, LiveMetrics.get().getEventMetrics());
+        writer.flush();
+        return Arrays.asList(text.toString().split("\\r?\\n"));
+    }
+
+    /**
+     * @return                      <tt>true</tt> if there is a numeric sample starting with the given text
+     */
+    private static boolean hasSample(List<String> text, String start)
+    {
+        for (String line : text)
+        {
+            if (line.startsWith(start) && line.substring(start.length()).matches("\\d+(\\.\\d{3})?"))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testNoEvents()
+    {
+        assertEquals(
+                Arrays.asList(
+                        "# TYPE cmis_events_total counter",
+                        "# TYPE cmis_event_errors_total counter",
+                        "# TYPE cmis_events_per_second gauge",
+                        "# TYPE cmis_event_errors_per_second gauge",
+                        "# TYPE cmis_event_latency_ms gauge"),
+                getText());
+    }
+
+    @Test
+    public void testSamples()
+    {
+        LiveMetrics.get().record("cmis.scenario.01.b", 10L, true);
+        LiveMetrics.get().record("cmis.scenario.01.b", 10L, true);
+        LiveMetrics.get().record("cmis.scenario.01.b", 10L, false);
+        LiveMetrics.get().record("cmis.scenario.01.a", 20L, true);
+
+        List<String> text = getText();
+        // Events are listed by name
+        int a = text.indexOf("cmis_events_total{event=\"cmis.scenario.01.a\"} 1");
+        int b = text.indexOf("cmis_events_total{event=\"cmis.scenario.01.b\"} 3");
+        assertTrue(text.toString(), a > 0 && b == a + 1);
+        assertTrue(text.contains("cmis_event_errors_total{event=\"cmis.scenario.01.a\"} 0"));
+        assertTrue(text.contains("cmis_event_errors_total{event=\"cmis.scenario.01.b\"} 1"));
+        assertTrue(hasSample(text, "cmis_events_per_second{event=\"cmis.scenario.01.b\",window=\"1s\"} "));
+        assertTrue(hasSample(text, "cmis_event_errors_per_second{event=\"cmis.scenario.01.b\",window=\"10s\"} "));
+        // There is no complete latency window yet
+        assertTrue(text.contains("cmis_event_latency_ms{event=\"cmis.scenario.01.b\",quantile=\"0.99\",window=\"10s\"} 0"));
+        assertTrue(text.contains("cmis_event_latency_ms{event=\"cmis.scenario.01.b\",quantile=\"0.99\",window=\"run\"} 10"));
+        assertTrue(text.contains("cmis_event_latency_ms{event=\"cmis.scenario.01.a\",quantile=\"0.5\",window=\"run\"} 20"));
+        // 2 event names with 2 totals, 4 rates and 8 latencies each
+        assertEquals(5 + 2 * 14, text.size());
+    }
+
+    @Test
+    public void testEventNameEscaped()
+    {
+        LiveMetrics.get().record("odd\"name\\", 1L, true);
+        assertTrue(getText().contains("cmis_events_total{event=\"odd\\\"name\\\\\"} 1"));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.alfresco.bm.cmis.ObjectDataService.ObjectKind;
+import org.alfresco.mongo.MongoDBFactory;
+import org.alfresco.mongo.MongoDBForTestsFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+
+/**
+ * @see ObjectDataService
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class ObjectDataServiceTest
+{
+    private MongoDBForTestsFactory dbFactory;
+    private MongoClient mongoClient;
+    private ObjectDataService objectDataService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dbFactory = new MongoDBForTestsFactory();
+        String uriWithoutDB = dbFactory.getMongoURIWithoutDB();
+        mongoClient = new MongoClient(new MongoClientURI(uriWithoutDB).getHosts().get(0));
+        objectDataService = new ObjectDataService(new MongoDBFactory(mongoClient, "bm20-cmis-objects").getObject(), "test.objects");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (mongoClient != null)
+        {
+            mongoClient.close();
+        }
+        if (dbFactory != null)
+        {
+            dbFactory.destroy();
+        }
+    }
+
+    private void addDocument(String path)
+    {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        objectDataService.addDocument("id-" + path, "cmis:document", name, path, "parent", 100L, "image/gif");
+    }
+
+    @Test
+    public void testRandomObject()
+    {
+        Random random = new Random(1L);
+        assertNull(objectDataService.getRandomObject(ObjectKind.DOCUMENT, random));
+
+        objectDataService.addFolder("folder", "cmis:folder", "folder", "/folder", "root");
+        for (int i = 0; i < 10; i++)
+        {
+            addDocument("/folder/doc-" + i);
+        }
+        assertEquals(1L, objectDataService.countObjects(ObjectKind.FOLDER));
+        assertEquals(10L, objectDataService.countObjects(ObjectKind.DOCUMENT));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals("folder", objectDataService.getRandomObject(ObjectKind.FOLDER, random).get(ObjectDataService.FIELD_ID));
+        }
+
+        // Every document is chosen sooner or later
+        Map<Object, Integer> counts = new HashMap<Object, Integer>();
+        for (int i = 0; i < 10000; i++)
+        {
+            DBObject document = objectDataService.getRandomObject(ObjectKind.DOCUMENT, random);
+            assertEquals(ObjectKind.DOCUMENT.name(), document.get(ObjectDataService.FIELD_KIND));
+            Object id = document.get(ObjectDataService.FIELD_ID);
+            counts.put(id, counts.containsKey(id) ? counts.get(id) + 1 : 1);
+        }
+        assertEquals(10, counts.size());
+    }
+
+    @Test
+    public void testSeededChoices()
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            addDocument("/folder/doc-" + i);
+        }
+        Random random = new Random(42L);
+        Random sameRandom = new Random(42L);
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(
+                    objectDataService.getRandomObject(ObjectKind.DOCUMENT, random).get(ObjectDataService.FIELD_ID),
+                    objectDataService.getRandomObject(ObjectKind.DOCUMENT, sameRandom).get(ObjectDataService.FIELD_ID));
+        }
+    }
+
+    @Test
+    public void testAddAgain()
+    {
+        addDocument("/folder/doc");
+        addDocument("/folder/doc");
+        assertEquals(1L, objectDataService.countObjects(ObjectKind.DOCUMENT));
+        objectDataService.removeObject("id-/folder/doc");
+        assertEquals(0L, objectDataService.countObjects(ObjectKind.DOCUMENT));
+    }
+
+    @Test
+    public void testRemoveTree()
+    {
+        objectDataService.addFolder("a.b", "cmis:folder", "a.b", "/a.b", "root");
+        addDocument("/a.b/doc");
+        addDocument("/a.b/sub/doc");
+        // Paths that only match if the path is not taken literally
+        addDocument("/a.bc/doc");
+        addDocument("/aXb/doc");
+
+        assertEquals(3, objectDataService.removeTree("/a.b"));
+        assertEquals(0L, objectDataService.countObjects(ObjectKind.FOLDER));
+        assertEquals(2L, objectDataService.countObjects(ObjectKind.DOCUMENT));
+        assertNotNull(objectDataService.getRandomObject(ObjectKind.DOCUMENT, new Random()));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.bm.event.Event;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see OperationContextProfile
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class OperationContextProfileTest
+{
+    private static OperationContext newContext(String filter)
+    {
+        OperationContext ctx = new OperationContextImpl();
+        ctx.setFilterString(filter);
+        return ctx;
+    }
+
+    /**
+     * @return                      a session with the given default context that records the context of queries
+     */
+    private static Session getSession(final OperationContext defaultCtx, final AtomicReference<OperationContext> queryCtx)
+    {
+        final ItemIterable<?> noResults = CMISStubs.stub(ItemIterable.class, "iterator", Collections.emptyIterator());
+        return CMISStubs.stub(Session.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("getDefaultContext"))
+                {
+                    return defaultCtx;
+                }
+                else if (method.getName().equals("query"))
+                {
+                    queryCtx.set((OperationContext) args[2]);
+                    return noResults;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testNoExperiment()
+    {
+        OperationContext profileCtx = newContext("cmis:objectId");
+        OperationContextProfile profile = new OperationContextProfile("idOnly", profileCtx);
+        Session session = getSession(newContext("*"), null);
+        assertSame(profileCtx, profile.getOperationContext(session));
+    }
+
+    @Test
+    public void testFilterVariant()
+    {
+        OperationContext profileCtx = newContext("cmis:objectId,cmis:creationDate");
+        profileCtx.setMaxItemsPerPage(7);
+        OperationContextProfile profile = new OperationContextProfile("listing", profileCtx);
+        OperationContext sessionCtx = OperationContextProfile.newFilterVariant(newContext("*"), "cmis:name");
+        Session session = getSession(sessionCtx, null);
+
+        OperationContext variantCtx = profile.getOperationContext(session);
+        assertTrue(variantCtx.getFilter().contains("cmis:name"));
+        assertFalse(variantCtx.getFilter().contains("cmis:creationDate"));
+        // Everything else comes from the profile
+        assertEquals(7, variantCtx.getMaxItemsPerPage());
+        assertSame("Variants are reused", variantCtx, profile.getOperationContext(session));
+        // The profile itself is untouched
+        assertTrue(profileCtx.getFilter().contains("cmis:creationDate"));
+    }
+
+    @Test
+    public void testQuerySendsFilterVariant() throws Exception
+    {
+        AtomicReference<OperationContext> queryCtx = new AtomicReference<OperationContext>();
+        OperationContext sessionCtx = OperationContextProfile.newFilterVariant(newContext("*"), "cmis:name");
+        CMISEventData data = new CMISEventData(getSession(sessionCtx, queryCtx));
+        data.getBreadcrumb().add(CMISStubs.stub(Folder.class, "getId", "folder-1", "getName", "folder"));
+
+        QueryFolderFromData processor = new QueryFolderFromData()
+        {
+            // The test drives the event without an event timer
+            @Override
+            protected void suspendTimer()
+            {
+            }
+
+            @Override
+            protected void resumeTimer()
+            {
+            }
+
+            @Override
+            protected void stopTimer()
+            {
+            }
+        };
+        processor.setOperationContextProfile(new OperationContextProfile("idOnly", newContext("cmis:objectId,cmis:creationDate")));
+        processor.processCMISEvent(new Event("cmis.scenario.02.queryFolder", 0L, data));
+
+        OperationContext sent = queryCtx.get();
+        assertTrue(sent.getFilter().contains("cmis:name"));
+        assertFalse(sent.getFilter().contains("cmis:creationDate"));
+    }
+}
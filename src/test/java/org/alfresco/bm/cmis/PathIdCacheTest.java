@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see PathIdCache
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class PathIdCacheTest
+{
+    /** IDs of objects that the session no longer finds */
+    private final Set<String> deletedIds = new HashSet<String>();
+    /** Paths resolved by the session */
+    private int pathLookups = 0;
+
+    /**
+     * @return                      a session whose objects have the ID 'id:' + path
+     */
+    private Session getSession()
+    {
+        final RepositoryInfo repositoryInfo = CMISStubs.stub(RepositoryInfo.class, "getId", "repo");
+        return CMISStubs.stub(Session.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("getRepositoryInfo"))
+                {
+                    return repositoryInfo;
+                }
+                else if (method.getName().equals("getObjectByPath"))
+                {
+                    pathLookups++;
+                    return CMISStubs.stub(CmisObject.class, "getId", "id:" + args[0]);
+                }
+                else if (method.getName().equals("getObject"))
+                {
+                    String id = args[0].toString();
+                    if (deletedIds.contains(id))
+                    {
+                        throw new CmisObjectNotFoundException(id);
+                    }
+                    return CMISStubs.stub(CmisObject.class, "getId", id);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize()
+    {
+        new PathIdCache(0);
+    }
+
+    @Test
+    public void testHitsAndMisses()
+    {
+        PathIdCache cache = new PathIdCache(10);
+        Session session = getSession();
+        assertEquals("id:/a", cache.getObject(session, "/a", null).getId());
+        assertEquals("id:/a", cache.getObject(session, "/a", null).getId());
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+        assertEquals(1, pathLookups);
+        assertEquals("id:/a", cache.getId(session, "/a"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        PathIdCache cache = new PathIdCache(2);
+        Session session = getSession();
+        cache.putId(session, "/a", "id:/a");
+        cache.putId(session, "/b", "id:/b");
+        // Using '/a' makes '/b' the least recently used
+        cache.getObject(session, "/a", null);
+        cache.putId(session, "/c", "id:/c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.getEvictions());
+        assertNull("The wrong path was evicted", cache.getId(session, "/b"));
+        assertEquals("id:/a", cache.getId(session, "/a"));
+        assertEquals("id:/c", cache.getId(session, "/c"));
+
+        // An evicted path is resolved again
+        cache.getObject(session, "/b", null);
+        assertEquals(1, pathLookups);
+        assertEquals(2L, cache.getEvictions());
+    }
+
+    @Test
+    public void testStaleId()
+    {
+        PathIdCache cache = new PathIdCache(10);
+        Session session = getSession();
+        cache.putId(session, "/a", "old");
+        deletedIds.add("old");
+
+        assertEquals("id:/a", cache.getObject(session, "/a", null).getId());
+        assertEquals(0L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+        assertEquals("id:/a", cache.getId(session, "/a"));
+    }
+}
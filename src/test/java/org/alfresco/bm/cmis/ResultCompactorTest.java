@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.bson.BSON;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBObject;
+
+/**
+ * @see ResultCompactor
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class ResultCompactorTest
+{
+    private static DBObject getResult()
+    {
+        BasicDBList ids = new BasicDBList();
+        ids.add("id-1");
+        ids.add("id-2");
+        return BasicDBObjectBuilder
+                .start()
+                .append("msg", "Successfully did something.")
+                .append("ctxProfile", "idOnly")
+                .append("scenario", "scenario.01")
+                .append("lookup", "CACHE")
+                .append("retry", Boolean.TRUE)
+                .append("count", 3)
+                .append("ids", ids)
+                .push("sessionTags")
+                    .append("filter", "none")
+                    .append("binding", "browser")
+                .pop()
+                .push("folder")
+                    .append("id", "folder-id")
+                    .append("name", "folder")
+                .pop()
+                .push("http")
+                    .append("requests", 2)
+                    .append("bytes", 1000L)
+                    .append("requestIds", ids)
+                .pop()
+                .push("cmisFault")
+                    .append("code", "404")
+                    .append("errorContent", "Not found")
+                .pop()
+                .get();
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        ResultCompactor compactor = new ResultCompactor(false);
+        compactor.setSuccessSamplePercent(0.0);
+        DBObject result = getResult();
+        compactor.compact(result, true);
+        assertEquals(getResult(), result);
+    }
+
+    @Test
+    public void testCompact()
+    {
+        ResultCompactor compactor = new ResultCompactor(true);
+        compactor.setSuccessSamplePercent(0.0);
+        DBObject result = getResult();
+        compactor.compact(result, true);
+
+        // Numbers and flags
+        assertEquals(3, result.get("count"));
+        assertEquals(Boolean.TRUE, result.get("retry"));
+        DBObject http = (DBObject) result.get("http");
+        assertEquals(2, http.get("requests"));
+        assertEquals(1000L, http.get("bytes"));
+        assertFalse(http.containsField("requestIds"));
+        // The fields that results are grouped by
+        assertEquals("idOnly", result.get("ctxProfile"));
+        assertEquals("scenario.01", result.get("scenario"));
+        assertEquals("CACHE", result.get("lookup"));
+        assertEquals("browser", ((DBObject) result.get("sessionTags")).get("binding"));
+        assertEquals("404", ((DBObject) result.get("cmisFault")).get("code"));
+        assertFalse(((DBObject) result.get("cmisFault")).containsField("errorContent"));
+        // Messages, lists and objects with nothing left
+        assertNull(result.get("msg"));
+        assertNull(result.get("ids"));
+        assertNull(result.get("folder"));
+    }
+
+    @Test
+    public void testKeepFields()
+    {
+        ResultCompactor compactor = new ResultCompactor(true);
+        compactor.setSuccessSamplePercent(0.0);
+        compactor.setKeepFields("msg, folder.name");
+        DBObject result = getResult();
+        compactor.compact(result, true);
+        assertEquals("Successfully did something.", result.get("msg"));
+        assertEquals("folder", ((DBObject) result.get("folder")).get("name"));
+        assertFalse(((DBObject) result.get("folder")).containsField("id"));
+        assertNull(result.get("ctxProfile"));
+        assertNull(result.get("sessionTags"));
+    }
+
+    @Test
+    public void testSampled()
+    {
+        ResultCompactor compactor = new ResultCompactor(true);
+        compactor.setSuccessSamplePercent(0.0);
+        // All failures are kept in full by default
+        DBObject failure = getResult();
+        compactor.compact(failure, false);
+        assertEquals(Boolean.TRUE, failure.get("sampled"));
+        failure.removeField("sampled");
+        assertEquals(getResult(), failure);
+
+        compactor.setSuccessSamplePercent(100.0);
+        DBObject success = getResult();
+        compactor.compact(success, true);
+        assertTrue(success.containsField("sampled"));
+        assertEquals("Successfully did something.", success.get("msg"));
+    }
+
+    /**
+     * @return                      a successful download result as written by the framework
+     */
+    private static DBObject getDownloadResult()
+    {
+        BasicDBList paths = new BasicDBList();
+        paths.add("/Sites/benchmark/documentLibrary/CMIS/2014-06-01/benchmark-file-00001234.docx");
+        BasicDBList requestIds = new BasicDBList();
+        requestIds.add("3f2a9c1e-7b4d-4e8a-9c2f-1a5b6d7e8f90");
+        requestIds.add("c4d5e6f7-0a1b-4c2d-8e3f-9a0b1c2d3e4f");
+        return BasicDBObjectBuilder
+                .start()
+                .append("msg", "Successfully downloaded document.")
+                .append("lookup", "PATH")
+                .append("pathDepth", 6)
+                .push("document")
+                    .append("id", "workspace://SpacesStore/0b8c6f52-5a3e-4c4f-9b5e-2f3a1d7c9e10;1.0")
+                    .append("name", "benchmark-file-00001234.docx")
+                    .append("paths", paths)
+                    .append("size", 65536L)
+                    .append("timeToFirstByte", 42L)
+                .pop()
+                .append("ctxProfile", "default")
+                .push("sessionTags")
+                    .append("filter", "*")
+                    .append("binding", "browser")
+                .pop()
+                .push("http")
+                    .append("requests", 2)
+                    .append("bytes", 66012L)
+                    .append("responseTime", 57L)
+                    .append("serverTimed", 2)
+                    .append("serverTime", 31L)
+                    .append("networkTime", 26L)
+                    .append("requestIds", requestIds)
+                .pop()
+                .push("cache")
+                    .append("hits", 1L)
+                    .append("misses", 1L)
+                    .append("evictions", 0L)
+                    .append("expiries", 0L)
+                    .push("session")
+                        .append("hits", 10L)
+                        .append("misses", 4L)
+                        .append("hitRatio", 10.0 / 14.0)
+                        .append("evictions", 0L)
+                        .append("expiries", 0L)
+                        .append("size", 4)
+                        .append("estimatedBytes", 16384L)
+                    .pop()
+                .pop()
+                .get();
+    }
+
+    @Test
+    public void testWriteVolume()
+    {
+        ResultCompactor compactor = new ResultCompactor(true);
+        compactor.setSuccessSamplePercent(0.0);
+        DBObject result = getDownloadResult();
+        int fullSize = BSON.encode(result).length;
+        compactor.compact(result, true);
+        int compactSize = BSON.encode(result).length;
+        // The identifiers and messages are most of a result
+        assertTrue("Compacted result is " + compactSize + " of " + fullSize + " bytes", compactSize * 10 < fullSize * 7);
+        assertEquals(42L, ((DBObject) result.get("document")).get("timeToFirstByte"));
+        assertEquals(2, ((DBObject) result.get("http")).get("requests"));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.DBObject;
+
+/**
+ * @see RetrieveTestFolder
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class RetrieveTestFolderTest
+{
+    private static final String PATH = "/Sites/benchmark/CMIS";
+
+    private final Folder folder = CMISStubs.stub(Folder.class, "getId", "folder-id", "getName", "CMIS");
+    private final OperationContext minimalCtx = new OperationContextImpl();
+    private PathIdCache pathIdCache;
+    private int pathLookups;
+    private int idLookups;
+    private OperationContext idLookupCtx;
+
+    @Before
+    public void setUp()
+    {
+        pathIdCache = new PathIdCache(10);
+        pathLookups = 0;
+        idLookups = 0;
+        idLookupCtx = null;
+    }
+
+    /**
+     * @return                      a new session of the repository that counts the lookups of the test folder
+     */
+    private Session newSession()
+    {
+        final RepositoryInfo repositoryInfo = CMISStubs.stub(RepositoryInfo.class, "getId", "repo");
+        return CMISStubs.stub(Session.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                String methodName = method.getName();
+                if (methodName.equals("getRepositoryInfo"))
+                {
+                    return repositoryInfo;
+                }
+                else if (methodName.equals("createOperationContext"))
+                {
+                    return minimalCtx;
+                }
+                else if (methodName.equals("getObjectByPath"))
+                {
+                    assertEquals(PATH, args[0]);
+                    pathLookups++;
+                    return folder;
+                }
+                else if (methodName.equals("getObject"))
+                {
+                    assertEquals("folder-id", args[0]);
+                    idLookups++;
+                    idLookupCtx = (OperationContext) args[1];
+                    return folder;
+                }
+                return null;
+            }
+        });
+    }
+
+    private EventResult retrieve(ObjectLookup lookup, boolean timePathResolution) throws Exception
+    {
+        RetrieveTestFolder processor = new RetrieveTestFolder(PATH)
+        {
+            // The test drives the event without an event timer
+            @Override
+            protected void suspendTimer()
+            {
+            }
+
+            @Override
+            protected void resumeTimer()
+            {
+            }
+
+            @Override
+            protected void stopTimer()
+            {
+            }
+        };
+        processor.setLookup(lookup);
+        processor.setPathIdCache(pathIdCache);
+        processor.setTimePathResolution(timePathResolution);
+        CMISEventData data = new CMISEventData(newSession());
+        EventResult result = processor.processCMISEvent(new Event("cmis.scenario.02.retrieveTestFolder", 0L, data));
+        assertTrue(result.isSuccess());
+        CMISEventData nextData = (CMISEventData) result.getNextEvents().get(0).getData();
+        assertSame(folder, nextData.getBreadcrumb().getLast());
+        return result;
+    }
+
+    @Test
+    public void testCached() throws Exception
+    {
+        // The first session resolves the path, outside of the timer, and then fetches the folder by ID
+        DBObject resultData = (DBObject) retrieve(ObjectLookup.CACHE, false).getData();
+        assertEquals(Boolean.FALSE, resultData.get("cacheHit"));
+        assertEquals("minimal", resultData.get("ctxProfile"));
+        assertEquals(1, pathLookups);
+        assertEquals(1, idLookups);
+        assertSame(minimalCtx, idLookupCtx);
+
+        // Later sessions of the repository only fetch the folder by ID
+        resultData = (DBObject) retrieve(ObjectLookup.CACHE, false).getData();
+        assertEquals(Boolean.TRUE, resultData.get("cacheHit"));
+        assertEquals(1, pathLookups);
+        assertEquals(2, idLookups);
+        assertEquals(2L, pathIdCache.getHits());
+    }
+
+    @Test
+    public void testTimedPathResolution() throws Exception
+    {
+        // A miss resolves the path in the timed call and does not fetch the folder again
+        retrieve(ObjectLookup.CACHE, true);
+        assertEquals(1, pathLookups);
+        assertEquals(0, idLookups);
+
+        retrieve(ObjectLookup.CACHE, true);
+        assertEquals(1, pathLookups);
+        assertEquals(1, idLookups);
+    }
+
+    @Test
+    public void testId() throws Exception
+    {
+        // The ID lookup never times the path resolution
+        retrieve(ObjectLookup.ID, true);
+        assertEquals(1, pathLookups);
+        assertEquals(1, idLookups);
+    }
+
+    @Test
+    public void testPath() throws Exception
+    {
+        DBObject resultData = (DBObject) retrieve(ObjectLookup.PATH, false).getData();
+        retrieve(ObjectLookup.PATH, false);
+        assertEquals(Boolean.FALSE, resultData.get("cacheHit"));
+        assertEquals(AbstractCMISEventProcessor.CTX_PROFILE_DEFAULT, resultData.get("ctxProfile"));
+        assertEquals(2, pathLookups);
+        assertEquals(0, idLookups);
+        assertNull(pathIdCache.getId(newSession(), PATH));
+    }
+}
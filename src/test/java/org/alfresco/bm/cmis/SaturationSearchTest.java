@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.alfresco.bm.event.Event;
+import org.alfresco.bm.event.EventResult;
+import org.alfresco.bm.user.UserData;
+import org.alfresco.bm.user.UserDataService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.mongodb.DBObject;
+
+/**
+ * @see SaturationSearch
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class SaturationSearchTest
+{
+    private ScenarioLatencyRecorder recorder;
+    private SaturationSearch search;
+
+    @Before
+    public void setUp()
+    {
+        LiveMetrics.get().reset();
+        UserData user = new UserData();
+        user.setUsername("user1");
+        UserDataService userDataService = CMISStubs.stub(UserDataService.class, "getRandomUser", user);
+        recorder = new ScenarioLatencyRecorder(0L);
+        // 2 sessions a second, raised by 1 a second, for at most 4 steps of a second
+        search = new SaturationSearch(userDataService, recorder, 2.0, 1.0, 1000L, 4)
+        {
+            // The test drives the event without an event timer
+            @Override
+            protected void suspendTimer()
+            {
+            }
+
+            @Override
+            protected void resumeTimer()
+            {
+            }
+
+            @Override
+            protected void stopTimer()
+            {
+            }
+        };
+        search.setSloP99(1000L);
+        search.setSloErrorPercent(10.0);
+    }
+
+    @After
+    public void tearDown()
+    {
+        LiveMetrics.get().reset();
+    }
+
+    /**
+     * Complete scenarios during a step
+     */
+    private void runScenarios(int count, long latency, int eventErrors)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            recorder.record("scenario.01", latency, true);
+            LiveMetrics.get().record("cmis.scenario.01.findFolder", latency, i >= eventErrors);
+        }
+    }
+
+    /**
+     * @return                      the result of the step
+     */
+    private EventResult step(Object state) throws Exception
+    {
+        return search.processCMISEvent(new Event(SaturationSearch.EVENT_NAME_SATURATION_STEP, 0L, state));
+    }
+
+    /**
+     * @return                      the state carried to the next step, after checking the sessions it starts
+     */
+    private static DBObject getNextState(EventResult result, int sessionCount)
+    {
+        List<Event> nextEvents = result.getNextEvents();
+        assertEquals(sessionCount + 1, nextEvents.size());
+        for (int i = 0; i < sessionCount; i++)
+        {
+            assertEquals(SaturationSearch.EVENT_NAME_START_SESSION, nextEvents.get(i).getName());
+            assertEquals("user1", nextEvents.get(i).getData());
+        }
+        Event nextStep = nextEvents.get(sessionCount);
+        assertEquals(SaturationSearch.EVENT_NAME_SATURATION_STEP, nextStep.getName());
+        return (DBObject) nextStep.getData();
+    }
+
+    private static DBObject getData(EventResult result)
+    {
+        assertTrue(result.isSuccess());
+        return (DBObject) result.getData();
+    }
+
+    @Test
+    public void testSearch() throws Exception
+    {
+        // The first step starts at the initial rate
+        EventResult result = step(null);
+        assertEquals(2.0, getData(result).get("rate"));
+        DBObject state = getNextState(result, 2);
+
+        // Within the objectives, the rate goes up
+        runScenarios(20, 100L, 1);
+        result = step(state);
+        DBObject data = getData(result);
+        assertEquals(Boolean.TRUE, data.get("checked"));
+        assertEquals(Boolean.FALSE, data.get("breached"));
+        assertEquals(3.0, data.get("rate"));
+        DBObject scenario = (DBObject) ((DBObject) data.get("scenarios")).get("scenario-01");
+        assertEquals(20L, scenario.get("completed"));
+        assertEquals(5.0, scenario.get("errorPercent"));
+        state = getNextState(result, 3);
+
+        // Too slow: back off to the last good rate
+        runScenarios(20, 5000L, 0);
+        result = step(state);
+        data = getData(result);
+        assertEquals(Boolean.TRUE, data.get("breached"));
+        assertEquals("confirm", data.get("phase"));
+        assertEquals(2.0, data.get("rate"));
+        state = getNextState(result, 2);
+
+        // The confirmation step ends the search
+        runScenarios(20, 100L, 0);
+        result = step(state);
+        data = getData(result);
+        assertTrue(result.getNextEvents().isEmpty());
+        assertEquals(Boolean.TRUE, data.get("confirmed"));
+        assertEquals(2.0, data.get("maxSustainableRate"));
+        assertTrue(((DBObject) data.get("maxSustainableThroughput")).containsField("scenario-01"));
+    }
+
+    @Test
+    public void testErrorsBreach() throws Exception
+    {
+        DBObject state = getNextState(step(null), 2);
+        // A breach of the first step leaves no sustainable rate to go back to
+        runScenarios(20, 100L, 5);
+        DBObject data = getData(step(state));
+        assertEquals(Boolean.TRUE, data.get("breached"));
+        assertEquals(0.0, data.get("maxSustainableRate"));
+        assertEquals(25.0, ((DBObject) ((DBObject) data.get("scenarios")).get("scenario-01")).get("errorPercent"));
+    }
+
+    @Test
+    public void testMaxSteps() throws Exception
+    {
+        DBObject state = getNextState(step(null), 2);
+        for (int sessionCount = 3; sessionCount <= 5; sessionCount++)
+        {
+            runScenarios(10, 100L, 0);
+            state = getNextState(step(state), sessionCount);
+        }
+        runScenarios(10, 100L, 0);
+        EventResult result = step(state);
+        assertTrue(result.getNextEvents().isEmpty());
+        assertEquals(5.0, getData(result).get("maxSustainableRate"));
+    }
+
+    @Test
+    public void testOtherDriver() throws Exception
+    {
+        DBObject state = getNextState(step(null), 2);
+        ((DBObject) state.get("snapshot")).put("driver", "another driver");
+        state.put("rate", 7.0);
+        // The step is run again rather than passed unchecked
+        runScenarios(20, 5000L, 0);
+        EventResult result = step(state);
+        DBObject data = getData(result);
+        assertEquals(Boolean.FALSE, data.get("checked"));
+        assertFalse(data.containsField("scenarios"));
+        assertEquals(7.0, data.get("rate"));
+        DBObject nextState = getNextState(result, 7);
+        assertEquals(0.0, nextState.get("lastGoodRate"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see ScenarioLimiter
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class ScenarioLimiterTest
+{
+    @Test
+    public void testUnlimited()
+    {
+        ScenarioLimiter limiter = new ScenarioLimiter("scenario.01", 0);
+        for (int i = 0; i < 100; i++)
+        {
+            assertNotNull(limiter.tryAcquire());
+        }
+        assertEquals(100, limiter.getInFlight());
+        assertEquals(100L, limiter.getAdmittedCount());
+        assertEquals(0L, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testCapacity()
+    {
+        ScenarioLimiter limiter = new ScenarioLimiter("scenario.01", 2);
+        ScenarioLimiter.Permit first = limiter.tryAcquire();
+        ScenarioLimiter.Permit second = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals("scenario.01", first.getScenario());
+        assertNull("Admitted beyond the cap", limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1L, limiter.getRejectedCount());
+
+        // Releasing makes room for exactly one more
+        assertTrue(first.release());
+        assertEquals(1, limiter.getInFlight());
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+        assertEquals(3L, limiter.getAdmittedCount());
+        assertEquals(2L, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testReleaseOnce()
+    {
+        ScenarioLimiter limiter = new ScenarioLimiter("scenario.01", 1);
+        ScenarioLimiter.Permit permit = limiter.tryAcquire();
+        assertTrue(permit.release());
+        assertFalse("Released twice", permit.release());
+        assertEquals(0, limiter.getInFlight());
+
+        // A second release must not raise the cap
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testQueueWait()
+    {
+        ScenarioLimiter limiter = new ScenarioLimiter("scenario.01", 0);
+        assertEquals(0L, limiter.getAverageQueueWait());
+        limiter.tryAcquire();
+        limiter.recordQueueWait(100L);
+        limiter.tryAcquire();
+        limiter.recordQueueWait(300L);
+        assertEquals(200L, limiter.getAverageQueueWait());
+        assertEquals(300L, limiter.getMaxQueueWait());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.alfresco.bm.event.Event;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see SessionLifecycle
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class SessionLifecycleTest
+{
+    private static final String EVENT_01 = "cmis.scenario.01.acquire";
+    private static final String EVENT_02 = "cmis.scenario.02.acquire";
+    private static final String EVENT_03 = "cmis.scenario.03.acquire";
+
+    private static void checkInvalid(int iterations, String transitions)
+    {
+        try
+        {
+            new SessionLifecycle(iterations, transitions);
+            fail("Invalid lifecycle accepted: " + iterations + " iterations, transitions '" + transitions + "'");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        checkInvalid(0, "");
+        checkInvalid(1, "01");
+        checkInvalid(1, "01=02");
+        checkInvalid(1, "01=02:x");
+        checkInvalid(1, "01=02:-1");
+        checkInvalid(1, "01=02:0,03:0");
+    }
+
+    @Test
+    public void testIterations()
+    {
+        SessionLifecycle lifecycle = new SessionLifecycle(2, "");
+        CMISEventData data = new CMISEventData(null, new Random(1L));
+        data.getSessionTags().put("filter", "none");
+
+        Event next = lifecycle.nextScenario(data, "scenario.01");
+        assertNotNull(next);
+        assertEquals(SessionLifecycle.EVENT_NAME_NEXT_SCENARIO, next.getName());
+        CMISEventData nextData = (CMISEventData) next.getData();
+        assertEquals(1, nextData.getScenarioCount());
+        assertEquals("none", nextData.getSessionTags().get("filter"));
+        assertTrue("The session's random choices must carry on", nextData.getRandom() == data.getRandom());
+        assertTrue("The session's workers must carry on", nextData.getWorkers() == data.getWorkers());
+        assertEquals(next.getScheduledTime(), nextData.getScenarioScheduledTime());
+
+        assertNull("Too many scenarios", lifecycle.nextScenario(nextData, "scenario.01"));
+    }
+
+    @Test
+    public void testScenarioState()
+    {
+        SessionLifecycle lifecycle = new SessionLifecycle(3, "");
+        CMISEventData data = new CMISEventData(null, new Random(1L));
+        data.setChangeLogToken("42");
+        data.setChangeLogPolls(5);
+        data.setVersionCount(3);
+        data.setScenarioPermit(new ScenarioLimiter("scenario.01", 1).tryAcquire());
+        data.getBreadcrumb().add(null);
+
+        CMISEventData nextData = (CMISEventData) lifecycle.nextScenario(data, "scenario.01").getData();
+        assertEquals("The change log must carry on", "42", nextData.getChangeLogToken());
+        assertEquals(0, nextData.getChangeLogPolls());
+        assertEquals(0, nextData.getVersionCount());
+        assertNull(nextData.getScenarioPermit());
+        assertTrue(nextData.getBreadcrumb().isEmpty());
+        assertNull(nextData.getDocument());
+    }
+
+    @Test
+    public void testTransitions()
+    {
+        SessionLifecycle lifecycle = new SessionLifecycle(Integer.MAX_VALUE, " 01 = 02:30 , 03:70 ; 02=01:100;03=01:0,02:1");
+        CMISEventData data = new CMISEventData(null, new Random(1L));
+        int to02 = 0;
+        for (int i = 0; i < 10000; i++)
+        {
+            String from01 = lifecycle.nextScenario(data, "scenario.01").getName();
+            assertTrue("Unexpected transition: " + from01, EVENT_02.equals(from01) || EVENT_03.equals(from01));
+            to02 += EVENT_02.equals(from01) ? 1 : 0;
+
+            assertEquals(EVENT_01, lifecycle.nextScenario(data, "scenario.02").getName());
+            assertEquals("A zero weight was chosen", EVENT_02, lifecycle.nextScenario(data, "scenario.03").getName());
+        }
+        assertTrue("Bad transition weights: " + to02 + " of 10000", to02 > 2700 && to02 < 3300);
+
+        // Scenarios without a row use the scenario weights
+        assertEquals(SessionLifecycle.EVENT_NAME_NEXT_SCENARIO, lifecycle.nextScenario(data, "scenario.04").getName());
+        assertEquals(SessionLifecycle.EVENT_NAME_NEXT_SCENARIO, lifecycle.nextScenario(data, null).getName());
+    }
+
+    @Test
+    public void testSeededChoices()
+    {
+        SessionLifecycle lifecycle = new SessionLifecycle(Integer.MAX_VALUE, "01=01:1,02:1,03:1");
+        lifecycle.setThinkTime(SessionLifecycle.ThinkTime.EXPONENTIAL);
+        lifecycle.setThinkTimeMean(1000L);
+        Random random = new Random(42L);
+        Random sameRandom = new Random(42L);
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(
+                    lifecycle.nextScenario(new CMISEventData(null, random), "scenario.01").getName(),
+                    lifecycle.nextScenario(new CMISEventData(null, sameRandom), "scenario.01").getName());
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(lifecycle.getThinkTime(random), lifecycle.getThinkTime(sameRandom));
+        }
+    }
+
+    @Test
+    public void testThinkTimes()
+    {
+        SessionLifecycle lifecycle = new SessionLifecycle(1, "");
+        Random random = new Random(1L);
+        lifecycle.setThinkTimeMean(1000L);
+        assertEquals("No think time by default", 0L, lifecycle.getThinkTime(random));
+
+        lifecycle.setThinkTime(SessionLifecycle.ThinkTime.FIXED);
+        assertEquals(1000L, lifecycle.getThinkTime(random));
+
+        for (SessionLifecycle.ThinkTime thinkTime : new SessionLifecycle.ThinkTime[] {SessionLifecycle.ThinkTime.UNIFORM, SessionLifecycle.ThinkTime.EXPONENTIAL})
+        {
+            lifecycle.setThinkTime(thinkTime);
+            lifecycle.setThinkTimeMax(0L);
+            long total = 0L;
+            for (int i = 0; i < 10000; i++)
+            {
+                long time = lifecycle.getThinkTime(random);
+                assertTrue("Negative think time: " + time, time >= 0L);
+                total += time;
+            }
+            long mean = total / 10000L;
+            assertTrue("Bad " + thinkTime + " mean: " + mean, mean > 900L && mean < 1100L);
+
+            lifecycle.setThinkTimeMax(1500L);
+            for (int i = 0; i < 10000; i++)
+            {
+                long time = lifecycle.getThinkTime(random);
+                assertTrue("Think time above the maximum: " + time, time <= 1500L);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see SessionWorkers
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class SessionWorkersTest
+{
+    private SessionWorkers workers;
+
+    @Before
+    public void setUp()
+    {
+        workers = new SessionWorkers();
+    }
+
+    @After
+    public void tearDown()
+    {
+        workers.shutdown();
+    }
+
+    /**
+     * @return                      the most calls that were running at the same time
+     */
+    private static int getPeakConcurrency(ExecutorService executor, int taskCount) throws Exception
+    {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(taskCount);
+        for (int i = 0; i < taskCount; i++)
+        {
+            final int task = i;
+            tasks.add(new Callable<Integer>()
+            {
+                @Override
+                public Integer call() throws Exception
+                {
+                    int now = running.incrementAndGet();
+                    int max = peak.get();
+                    while (now > max && !peak.compareAndSet(max, now))
+                    {
+                        max = peak.get();
+                    }
+                    Thread.sleep(20L);
+                    running.decrementAndGet();
+                    return task;
+                }
+            });
+        }
+        List<Future<Integer>> futures = executor.invokeAll(tasks);
+        for (int i = 0; i < taskCount; i++)
+        {
+            assertEquals(Integer.valueOf(i), futures.get(i).get());
+        }
+        return peak.get();
+    }
+
+    @Test
+    public void testThreadCount() throws Exception
+    {
+        int peak = getPeakConcurrency(workers.get(4), 16);
+        assertTrue("Too many calls at once: " + peak, peak <= 4);
+        assertTrue("Calls were not made in parallel", peak > 1);
+    }
+
+    @Test
+    public void testSmallerThreadCount() throws Exception
+    {
+        // A larger pool for an earlier event does not raise the thread count of later events
+        getPeakConcurrency(workers.get(8), 16);
+        int peak = getPeakConcurrency(workers.get(2), 16);
+        assertTrue("Too many calls at once: " + peak, peak <= 2);
+
+        peak = getPeakConcurrency(workers.get(1), 4);
+        assertEquals(1, peak);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testShutdownBySession()
+    {
+        workers.get(1).shutdown();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2005-2014 Alfresco Software Limited.
+ *
+ * This file is part of Alfresco
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.alfresco.bm.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * @see StartCMISSession
+ * 
+ * @author Rui Fernandes
+ * @since 1.4
+ */
+@RunWith(JUnit4.class)
+public class StartCMISSessionTest
+{
+    @Test
+    public void testSessionSeeds()
+    {
+        // The same user and session always give the same choices
+        assertEquals(
+                StartCMISSession.getSessionSeed(42L, "user1", 0),
+                StartCMISSession.getSessionSeed(42L, "user1", 0));
+        Random random = new Random(StartCMISSession.getSessionSeed(42L, "user1", 0));
+        Random sameRandom = new Random(StartCMISSession.getSessionSeed(42L, "user1", 0));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(random.nextLong(), sameRandom.nextLong());
+        }
+
+        // Users, their sessions and runs with other seeds all differ
+        Set<Long> seeds = new HashSet<Long>();
+        for (long runSeed = 1L; runSeed <= 3L; runSeed++)
+        {
+            for (int user = 0; user < 100; user++)
+            {
+                for (int session = 0; session < 10; session++)
+                {
+                    seeds.add(StartCMISSession.getSessionSeed(runSeed, "user" + user, session));
+                }
+            }
+        }
+        assertEquals(3000, seeds.size());
+        assertTrue(StartCMISSession.getSessionSeed(1L, "user1", 0) != StartCMISSession.getSessionSeed(1L, "user1", 1));
+    }
+
+    /**
+     * @return                      the number of browser sessions among the given sessions
+     */
+    private static int countBrowserSessions(long firstSession, int sessions, int browserRatio)
+    {
+        int browserSessions = 0;
+        for (long session = firstSession; session < firstSession + sessions; session++)
+        {
+            browserSessions += StartCMISSession.isBrowserSession(session, browserRatio) ? 1 : 0;
+        }
+        return browserSessions;
+    }
+
+    @Test
+    public void testBrowserRatio()
+    {
+        assertEquals(0, countBrowserSessions(0L, 1000, 0));
+        assertEquals(1000, countBrowserSessions(0L, 1000, 100));
+        assertEquals(500, countBrowserSessions(0L, 1000, 50));
+        assertEquals(300, countBrowserSessions(0L, 1000, 30));
+        assertEquals(70, countBrowserSessions(0L, 1000, 7));
+
+        // The browser sessions are spread evenly rather than started in a block
+        for (long first = 0L; first < 1000L; first += 10L)
+        {
+            assertEquals(3, countBrowserSessions(first, 10, 30));
+            assertEquals(5, countBrowserSessions(first, 10, 50));
+        }
+        assertEquals(1, countBrowserSessions(0L, 2, 50));
+    }
+}